@@ -0,0 +1,61 @@
+package org.speech4j.securityservice.benchmark;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.speech4j.securityservice.domain.Role;
+import org.speech4j.securityservice.domain.User;
+import org.speech4j.securityservice.security.AuthenticationManager;
+import org.speech4j.securityservice.security.RevocationList;
+import org.speech4j.securityservice.security.TokenCache;
+import org.speech4j.securityservice.util.JWTUtil;
+import org.speech4j.securityservice.util.JwtKey;
+import org.speech4j.securityservice.util.JwtKeyRing;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds the beans under test without a Spring context, using the same
+ * values as application.yml.
+ */
+final class BenchmarkFixtures {
+
+    static final String EXPIRATION = "100500";
+
+    private BenchmarkFixtures() {
+    }
+
+    // Each run signs with a freshly generated key pair, alone in its key ring
+
+    static JWTUtil jwtUtil(String algorithm) {
+        JwtKeyRing keyRing = new JwtKeyRing();
+        keyRing.install(JwtKey.generate(SignatureAlgorithm.forName(algorithm)), Collections.emptyList());
+        JWTUtil jwtUtil = new JWTUtil();
+        ReflectionTestUtils.setField(jwtUtil, "expirationTime", EXPIRATION);
+        ReflectionTestUtils.setField(jwtUtil, "keyRing", keyRing);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    // A max-ttl of 0 expires every entry on insert, so each call takes the full validation path
+
+    static AuthenticationManager authenticationManager(JWTUtil jwtUtil, boolean cached) {
+        AuthenticationManager manager = new AuthenticationManager();
+        TokenCache cache = new TokenCache(10_000, cached ? 300 : 0, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(manager, "jwtUtil", jwtUtil);
+        ReflectionTestUtils.setField(manager, "tokenCache", cache);
+        ReflectionTestUtils.setField(manager, "revocationList", new RevocationList(100_000, 0.01, new SimpleMeterRegistry()));
+        return manager;
+    }
+
+    static User user() {
+        Set<Role> roles = new HashSet<>();
+        roles.add(new Role(1, "user"));
+        roles.add(new Role(2, "admin"));
+        roles.add(new Role(3, "support"));
+        return new User("0b9c2a52-7d4b-4a39-9a0e-1f6d7f0b2c11", "benchmark", "benchmark@speech4j.org",
+                "$2a$10$3euPcmQFCiblsZeEu5s7p.9OVHgeHWFDk9nhMqZ0m/3pd/lhwZgES", roles, 0);
+    }
+}
@@ -0,0 +1,64 @@
+package org.speech4j.securityservice.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.speech4j.securityservice.domain.User;
+import org.speech4j.securityservice.security.AuthenticationManager;
+import org.speech4j.securityservice.util.JWTUtil;
+import org.speech4j.securityservice.util.TokenValidationResult;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtBenchmark {
+
+    @Param({"ES256", "RS256"})
+    private String algorithm;
+
+    private JWTUtil jwtUtil;
+    private AuthenticationManager uncachedManager;
+    private AuthenticationManager cachedManager;
+    private User user;
+    private Authentication bearer;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = BenchmarkFixtures.jwtUtil(algorithm);
+        uncachedManager = BenchmarkFixtures.authenticationManager(jwtUtil, false);
+        cachedManager = BenchmarkFixtures.authenticationManager(jwtUtil, true);
+        user = BenchmarkFixtures.user();
+        token = jwtUtil.generateToken(user);
+        bearer = new UsernamePasswordAuthenticationToken(token, token);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken(user);
+    }
+
+    @Benchmark
+    public TokenValidationResult validateToken() {
+        return jwtUtil.validate(token);
+    }
+
+    @Benchmark
+    public Authentication authenticateUncached() {
+        return uncachedManager.authenticate(bearer).block();
+    }
+
+    @Benchmark
+    public Authentication authenticateCached() {
+        return cachedManager.authenticate(bearer).block();
+    }
+}
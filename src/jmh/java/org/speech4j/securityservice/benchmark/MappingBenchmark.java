@@ -0,0 +1,56 @@
+package org.speech4j.securityservice.benchmark;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.speech4j.securityservice.domain.User;
+import org.speech4j.securityservice.dto.UserDto;
+import org.speech4j.securityservice.mapper.UserMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row mapping cost of the reflective ModelMapper the services used to
+ * call versus the explicit {@link UserMapper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MappingBenchmark {
+
+    private ModelMapper modelMapper;
+    private User user;
+    private UserDto dto;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        user = BenchmarkFixtures.user();
+        dto = UserMapper.toDto(user);
+    }
+
+    @Benchmark
+    public UserDto userToDtoModelMapper() {
+        return modelMapper.map(user, UserDto.class);
+    }
+
+    @Benchmark
+    public UserDto userToDtoDirect() {
+        return UserMapper.toDto(user);
+    }
+
+    @Benchmark
+    public User dtoToUserModelMapper() {
+        return modelMapper.map(dto, User.class);
+    }
+
+    @Benchmark
+    public User dtoToUserDirect() {
+        return UserMapper.toEntity(dto);
+    }
+}
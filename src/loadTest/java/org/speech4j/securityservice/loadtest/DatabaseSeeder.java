@@ -0,0 +1,91 @@
+package org.speech4j.securityservice.loadtest;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Bulk inserts users and roles over JDBC into the schema the application
+ * migrated, bypassing the service so seeding doesn't skew the measured routes.
+ */
+class DatabaseSeeder {
+
+    static final String PASSWORD = "loadtest123";
+    static final int ADMIN_ROLE_ID = 1;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+
+    DatabaseSeeder(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    // Every user shares one hash, computing a BCrypt hash per seeded row would dominate setup time
+
+    List<SeededUser> seed(int userCount, int roleCount) throws SQLException {
+        String hash = "{bcrypt}" + new BCryptPasswordEncoder(10).encode(PASSWORD);
+        List<SeededUser> users = new ArrayList<>(userCount);
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement roles = connection.prepareStatement("INSERT INTO roles (id, name) VALUES (?, ?)")) {
+                for (int i = 1; i <= roleCount; i++) {
+                    roles.setInt(1, i);
+                    roles.setString(2, i == ADMIN_ROLE_ID ? "admin" : "role" + i);
+                    roles.addBatch();
+                }
+                roles.executeBatch();
+            }
+            // Explicit ids leave the sequence behind, roles created during the run would collide with them
+            try (Statement sequence = connection.createStatement()) {
+                sequence.execute("SELECT setval(pg_get_serial_sequence('roles', 'id'), (SELECT max(id) FROM roles))");
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO users (id, email, password, username) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < userCount; i++) {
+                    SeededUser user = new SeededUser(UUID.randomUUID().toString(), String.format("loaduser%06d", i));
+                    insert.setString(1, user.id);
+                    insert.setString(2, user.username + "@loadtest.org");
+                    insert.setString(3, hash);
+                    insert.setString(4, user.username);
+                    insert.addBatch();
+                    users.add(user);
+                    if (users.size() % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+
+            try (PreparedStatement admin = connection.prepareStatement(
+                    "INSERT INTO users_roles (users_id, roles_id) VALUES (?, ?)")) {
+                admin.setString(1, users.get(0).id);
+                admin.setInt(2, ADMIN_ROLE_ID);
+                admin.executeUpdate();
+            }
+
+            connection.commit();
+        }
+        return users;
+    }
+
+    static final class SeededUser {
+        final String id;
+        final String username;
+
+        SeededUser(String id, String username) {
+            this.id = id;
+            this.username = username;
+        }
+    }
+}
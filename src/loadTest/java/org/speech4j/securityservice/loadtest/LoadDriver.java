@@ -0,0 +1,148 @@
+package org.speech4j.securityservice.loadtest;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop traffic generator, each of the {@code concurrency} workers
+ * sends its next request as soon as the previous one completes.
+ */
+class LoadDriver {
+
+    // Relative weights of the route mix
+    private static final int REGISTER = 5;
+    private static final int LOGIN = 20;
+    private static final int GET_USER = 65;
+    private static final int ROLE_CHANGE = 10;
+
+    private static final int TOKEN_POOL_SIZE = 32;
+
+    private final WebClient client;
+    private final LoadTest.Settings settings;
+    private final List<DatabaseSeeder.SeededUser> users;
+    private final AtomicLong registrations = new AtomicLong();
+    private List<String> tokens;
+
+    LoadDriver(String baseUrl, LoadTest.Settings settings, List<DatabaseSeeder.SeededUser> users) {
+        this.client = WebClient.builder()
+                .baseUrl(baseUrl)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+        this.settings = settings;
+        this.users = users;
+    }
+
+    LoadTestReport run() {
+        tokens = Flux.fromIterable(users.subList(0, Math.min(TOKEN_POOL_SIZE, users.size())))
+                .flatMap(user -> login(user.username).map(response -> (String) response.get("token")))
+                .collectList()
+                .block();
+        if (tokens == null || tokens.isEmpty()) {
+            throw new IllegalStateException("Could not obtain any access token, is the service healthy?");
+        }
+
+        drive(new LoadTestReport(), settings.warmup);
+        LoadTestReport report = new LoadTestReport();
+        drive(report, settings.duration);
+        return report;
+    }
+
+    private void drive(LoadTestReport report, Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        long started = System.nanoTime();
+        Flux.range(0, settings.concurrency)
+                .flatMap(worker -> Mono.defer(() -> nextRequest(report))
+                        .repeat(() -> System.nanoTime() < deadline), settings.concurrency)
+                .blockLast();
+        report.setElapsed(Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private Mono<Void> nextRequest(LoadTestReport report) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int pick = random.nextInt(REGISTER + LOGIN + GET_USER + ROLE_CHANGE);
+        if (pick < REGISTER) {
+            return register(report);
+        }
+        pick -= REGISTER;
+        if (pick < LOGIN) {
+            return timed(report, "POST /login", client.post().uri("/login")
+                    .bodyValue(credentials(randomUser().username)));
+        }
+        pick -= LOGIN;
+        if (pick < GET_USER) {
+            return timed(report, "GET /users/{id}", client.get().uri("/users/{id}", randomUser().id)
+                    .header(HttpHeaders.AUTHORIZATION, bearer()));
+        }
+        return changeRole(report);
+    }
+
+    private Mono<Void> register(LoadTestReport report) {
+        String username = "reg" + Long.toHexString(System.nanoTime()) + registrations.incrementAndGet();
+        Map<String, String> body = Map.of(
+                "username", username,
+                "email", username + "@loadtest.org",
+                "password", DatabaseSeeder.PASSWORD
+        );
+        return timed(report, "POST /register", client.post().uri("/register").bodyValue(body));
+    }
+
+    private Mono<Void> changeRole(LoadTestReport report) {
+        // Skip the admin user at index 0 so its role is never revoked
+        String userId = users.get(1 + ThreadLocalRandom.current().nextInt(users.size() - 1)).id;
+        int roleId = 2 + ThreadLocalRandom.current().nextInt(Math.max(1, settings.roles - 1));
+        String token = bearer();
+        return timed(report, "POST /users/{id}/roles", client.post().uri("/users/{id}/roles", userId)
+                        .header(HttpHeaders.AUTHORIZATION, token)
+                        .bodyValue(Collections.singletonMap("id", roleId)))
+                .then(timed(report, "DELETE /users/{id}/roles/{roleId}",
+                        client.delete().uri("/users/{id}/roles/{roleId}", userId, roleId)
+                                .header(HttpHeaders.AUTHORIZATION, token)));
+    }
+
+    private Mono<Void> timed(LoadTestReport report, String route, WebClient.RequestHeadersSpec<?> request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return request.exchange()
+                    .flatMap(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+                    .onErrorReturn(LoadTestReport.TRANSPORT_ERROR)
+                    .doOnNext(status -> report.record(route, System.nanoTime() - start, status))
+                    .then();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<Map<String, Object>> login(String username) {
+        return client.post().uri("/login")
+                .bodyValue(credentials(username))
+                .exchange()
+                .flatMap(response -> response.statusCode().is2xxSuccessful()
+                        ? response.bodyToMono(Map.class)
+                        : response.releaseBody().then(Mono.empty()))
+                .map(body -> (Map<String, Object>) body);
+    }
+
+    private static Map<String, String> credentials(String username) {
+        return Map.of("username", username, "password", DatabaseSeeder.PASSWORD);
+    }
+
+    private DatabaseSeeder.SeededUser randomUser() {
+        return users.get(ThreadLocalRandom.current().nextInt(users.size()));
+    }
+
+    private String bearer() {
+        return "Bearer " + tokens.get(ThreadLocalRandom.current().nextInt(tokens.size()));
+    }
+}
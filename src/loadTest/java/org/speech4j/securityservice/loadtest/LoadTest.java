@@ -0,0 +1,95 @@
+package org.speech4j.securityservice.loadtest;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.speech4j.securityservice.Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Boots {@link Application} against an embedded Postgres, which it migrates
+ * on startup, seeds users and roles, drives concurrent traffic and writes a
+ * per-route latency report.
+ * Settings are read from {@code loadtest.*} system properties, run it with
+ * {@code ./gradlew loadTest -Dloadtest.users=5000 -Dloadtest.concurrency=128}.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.fromSystemProperties();
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            // The application migrates the empty database on startup, seeding has to wait for it
+            try (ConfigurableApplicationContext context = startApplication(postgres.getPort())) {
+                DatabaseSeeder seeder = new DatabaseSeeder(postgres.getPostgresDatabase());
+                List<DatabaseSeeder.SeededUser> users = seeder.seed(settings.users, settings.roles);
+
+                int port = Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+                LoadDriver driver = new LoadDriver("http://localhost:" + port, settings, users);
+                LoadTestReport report = driver.run();
+                report.write(settings.report, settings.describe());
+                System.out.println(report.format(settings.describe()));
+            }
+        }
+    }
+
+    // Passed as command line arguments so they take precedence over application.yml
+
+    private static ConfigurableApplicationContext startApplication(int databasePort) {
+        return new SpringApplicationBuilder(Application.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.data.postgres.host=localhost",
+                        "--spring.data.postgres.port=" + databasePort,
+                        "--spring.data.postgres.database=postgres",
+                        "--spring.data.postgres.username=postgres",
+                        "--spring.data.postgres.password=postgres",
+                        // every simulated user logs in from loopback, throttling would only measure the limiter
+                        "--login.rate-limit.address.refill=0s",
+                        "--login.rate-limit.username.refill=0s",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.data.r2dbc=WARN",
+                        "--logging.level.org.speech4j.securityservice=WARN",
+                        "--logging.level.org.speech4j.securityservice.service=WARN"
+                );
+    }
+
+    static final class Settings {
+        final int users;
+        final int roles;
+        final int concurrency;
+        final Duration warmup;
+        final Duration duration;
+        final Path report;
+
+        private Settings(int users, int roles, int concurrency, Duration warmup, Duration duration,
+                         Path report) {
+            this.users = users;
+            this.roles = roles;
+            this.concurrency = concurrency;
+            this.warmup = warmup;
+            this.duration = duration;
+            this.report = report;
+        }
+
+        static Settings fromSystemProperties() {
+            return new Settings(
+                    Integer.getInteger("loadtest.users", 1000),
+                    Integer.getInteger("loadtest.roles", 10),
+                    Integer.getInteger("loadtest.concurrency", 64),
+                    Duration.ofSeconds(Long.getLong("loadtest.warmup", 10)),
+                    Duration.ofSeconds(Long.getLong("loadtest.duration", 60)),
+                    Paths.get(System.getProperty("loadtest.report", "build/reports/loadtest/report.txt"))
+            );
+        }
+
+        String describe() {
+            return "users=" + users + " roles=" + roles + " concurrency=" + concurrency +
+                    " warmup=" + warmup.getSeconds() + "s duration=" + duration.getSeconds() + "s";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.speech4j.securityservice.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-route latency histograms. The text report has one row per route in
+ * a fixed order and column layout, so reports from two commits diff cleanly.
+ */
+class LoadTestReport {
+
+    static final int TRANSPORT_ERROR = 0;
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, RouteStats> routes = new ConcurrentHashMap<>();
+    private Duration elapsed = Duration.ZERO;
+
+    void record(String route, long latencyNanos, int status) {
+        routes.computeIfAbsent(route, r -> new RouteStats()).record(latencyNanos, status);
+    }
+
+    void setElapsed(Duration elapsed) {
+        this.elapsed = elapsed;
+    }
+
+    String format(String settings) {
+        StringBuilder out = new StringBuilder();
+        out.append("# security-service load test\n");
+        out.append("# ").append(settings).append('\n');
+        out.append(String.format("%-36s %10s %8s %10s %9s %9s %9s %9s  %s%n",
+                "route", "requests", "errors", "req/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "statuses"));
+
+        double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+        for (Map.Entry<String, RouteStats> entry : new TreeMap<>(routes).entrySet()) {
+            Histogram histogram = entry.getValue().histogram;
+            out.append(String.format("%-36s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f  %s%n",
+                    entry.getKey(),
+                    histogram.getTotalCount(),
+                    entry.getValue().errors.sum(),
+                    histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()),
+                    entry.getValue().statuses()));
+        }
+        return out.toString();
+    }
+
+    void write(Path file, String settings) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, format(settings).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static final class RouteStats {
+        private final Histogram histogram = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        private final LongAdder errors = new LongAdder();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentSkipListMap<>();
+
+        private void record(long latencyNanos, int status) {
+            histogram.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (status == TRANSPORT_ERROR || status >= 400) {
+                errors.increment();
+            }
+        }
+
+        private String statuses() {
+            StringBuilder out = new StringBuilder();
+            statuses.forEach((status, count) -> {
+                if (out.length() > 0) {
+                    out.append(' ');
+                }
+                out.append(status).append(':').append(count.sum());
+            });
+            return out.toString();
+        }
+    }
+}
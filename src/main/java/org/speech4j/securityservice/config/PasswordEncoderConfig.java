@@ -0,0 +1,54 @@
+package org.speech4j.securityservice.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.security.crypto.scrypt.SCryptPasswordEncoder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stored hashes are tagged with the algorithm id, e.g. {@code {bcrypt}$2a$10$...}.
+ * New hashes use {@code security.password.algorithm} with the configured cost,
+ * older or weaker hashes keep matching and are rehashed after a successful login.
+ * Untagged hashes written before the prefix was introduced are treated as BCrypt.
+ */
+@Slf4j
+@Configuration
+public class PasswordEncoderConfig {
+
+    @Value("${security.password.algorithm:bcrypt}") private String algorithm;
+    @Value("${security.password.bcrypt.strength:10}") private int bcryptStrength;
+    @Value("${security.password.pbkdf2.iterations:185000}") private int pbkdf2Iterations;
+    @Value("${security.password.scrypt.cpu-cost:16384}") private int scryptCpuCost;
+    @Value("${security.password.scrypt.memory-cost:8}") private int scryptMemoryCost;
+    @Value("${security.password.scrypt.parallelization:1}") private int scryptParallelization;
+    @Value("${security.password.argon2.iterations:3}") private int argon2Iterations;
+    @Value("${security.password.argon2.memory:65536}") private int argon2Memory;
+    @Value("${security.password.argon2.parallelism:1}") private int argon2Parallelism;
+
+    @Bean
+    public PasswordEncoder passwordEncoder() {
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put("bcrypt", new BCryptPasswordEncoder(bcryptStrength));
+        encoders.put("pbkdf2", new Pbkdf2PasswordEncoder("", pbkdf2Iterations, 256));
+        encoders.put("scrypt", new SCryptPasswordEncoder(scryptCpuCost, scryptMemoryCost, scryptParallelization, 32, 16));
+        encoders.put("argon2", new Argon2PasswordEncoder(16, 32, argon2Parallelism, argon2Memory, argon2Iterations));
+
+        if (!encoders.containsKey(algorithm)) {
+            throw new IllegalStateException("Unsupported password hashing algorithm: " + algorithm);
+        }
+        LOGGER.info("Hashing new passwords with {}", algorithm);
+
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(algorithm, encoders);
+        encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        return encoder;
+    }
+}
@@ -1,12 +1,25 @@
 package org.speech4j.securityservice.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
 import io.r2dbc.postgresql.PostgresqlConnectionConfiguration;
 import io.r2dbc.postgresql.PostgresqlConnectionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.data.r2dbc.config.AbstractR2dbcConfiguration;
+import org.springframework.data.r2dbc.connectionfactory.R2dbcTransactionManager;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.data.r2dbc.core.ReactiveDataAccessStrategy;
 import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.data.r2dbc.support.R2dbcExceptionTranslator;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.time.Duration;
 
 @Configuration
 @EnableR2dbcRepositories
@@ -18,14 +31,62 @@ public class PostgresConfig extends AbstractR2dbcConfiguration {
     @Value("${spring.data.postgres.username}") private String username;
     @Value("${spring.data.postgres.password}") private String password;
 
+    @Value("${spring.data.postgres.pool.initial-size:5}") private int poolInitialSize;
+    @Value("${spring.data.postgres.pool.max-size:20}") private int poolMaxSize;
+    @Value("${spring.data.postgres.pool.max-acquire-time:5s}") private Duration maxAcquireTime;
+    @Value("${spring.data.postgres.pool.max-idle-time:30m}") private Duration maxIdleTime;
+    @Value("${spring.data.postgres.pool.max-life-time:1h}") private Duration maxLifeTime;
+    @Value("${spring.data.postgres.pool.validation-query:SELECT 1}") private String validationQuery;
+
+    @Value("${spring.data.postgres.migration.location:classpath:db/migration}") private String migrationLocation;
+    @Value("${spring.data.postgres.migration.timeout:5m}") private Duration migrationTimeout;
+
+    @Autowired
+    private MeterRegistry registry;
+
     @Bean
-    public PostgresqlConnectionFactory connectionFactory() {
-        return new PostgresqlConnectionFactory(PostgresqlConnectionConfiguration.builder()
+    public ConnectionPool connectionFactory() {
+        PostgresqlConnectionFactory connectionFactory = new PostgresqlConnectionFactory(PostgresqlConnectionConfiguration.builder()
                 .host(host)
                 .port(port)
                 .database(database)
                 .username(username)
                 .password(password)
                 .build());
+
+        return new TimedConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .name("security-service")
+                .initialSize(poolInitialSize)
+                .maxSize(poolMaxSize)
+                .maxAcquireTime(maxAcquireTime)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .validationQuery(validationQuery)
+                .build(), registry);
+    }
+
+    @Bean
+    SchemaMigrator schemaMigrator(ConnectionPool connectionFactory) {
+        return new SchemaMigrator(connectionFactory, migrationLocation, migrationTimeout);
+    }
+
+    // Repositories and every other query go through this client, so none of them runs before the migrations
+
+    @Override
+    @Bean({"r2dbcDatabaseClient", "databaseClient"})
+    @DependsOn("schemaMigrator")
+    public DatabaseClient databaseClient(ReactiveDataAccessStrategy dataAccessStrategy,
+                                         R2dbcExceptionTranslator exceptionTranslator) {
+        return super.databaseClient(dataAccessStrategy, exceptionTranslator);
+    }
+
+    @Bean
+    public ReactiveTransactionManager transactionManager(ConnectionPool connectionFactory) {
+        return new R2dbcTransactionManager(connectionFactory);
+    }
+
+    @Bean
+    public TransactionalOperator transactionalOperator(ReactiveTransactionManager transactionManager) {
+        return TransactionalOperator.create(transactionManager);
     }
 }
@@ -0,0 +1,114 @@
+package org.speech4j.securityservice.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records a {@code db.query} timer for every call on a Spring Data repository,
+ * tagged with the repository bean, the method and the outcome. Queries only run
+ * once the returned publisher is subscribed, so the clock starts on subscription
+ * and stops when the publisher terminates or is cancelled.
+ */
+@Slf4j
+@Component
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+    private static final String[] OUTCOMES = {"success", "error", "cancelled"};
+
+    private final ObjectProvider<MeterRegistry> registry;
+
+    // Resolved lazily, post processors are created before the registry bean
+
+    public RepositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof Repository && bean instanceof Advised) {
+            ((Advised) bean).addAdvice(0, new QueryTimingInterceptor(beanName));
+            LOGGER.debug("Query timing enabled for repository {}", beanName);
+        }
+        return bean;
+    }
+
+    private final class QueryTimingInterceptor implements MethodInterceptor {
+        private final String repository;
+        // One timer per outcome, indexed like OUTCOMES, built on the first call of each method
+        private final Map<Method, Timer[]> timers = new ConcurrentHashMap<>();
+
+        private QueryTimingInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Object result = invocation.proceed();
+            Method method = invocation.getMethod();
+            if (result instanceof Mono) {
+                Mono<?> query = (Mono<?>) result;
+                return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    AtomicBoolean emitted = new AtomicBoolean();
+                    // a Mono may be cancelled right after its value arrives, that still counts as success
+                    return query.doOnNext(value -> emitted.set(true))
+                            .doFinally(signal -> record(method, emitted.get() ? SignalType.ON_COMPLETE : signal, start));
+                });
+            }
+            if (result instanceof Flux) {
+                Flux<?> query = (Flux<?>) result;
+                return Flux.defer(() -> {
+                    long start = System.nanoTime();
+                    return query.doFinally(signal -> record(method, signal, start));
+                });
+            }
+            return result;
+        }
+
+        private void record(Method method, SignalType signal, long start) {
+            timers.computeIfAbsent(method, this::register)[outcome(signal)]
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        private Timer[] register(Method method) {
+            Timer[] outcomes = new Timer[OUTCOMES.length];
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                outcomes[i] = Timer.builder("db.query")
+                        .description("Time spent executing a repository query")
+                        .tag("repository", repository)
+                        .tag("method", method.getName())
+                        .tag("outcome", OUTCOMES[i])
+                        .publishPercentileHistogram()
+                        .register(registry.getObject());
+            }
+            return outcomes;
+        }
+
+        private int outcome(SignalType signal) {
+            switch (signal) {
+                case ON_COMPLETE:
+                    return 0;
+                case ON_ERROR:
+                    return 1;
+                default:
+                    return 2;
+            }
+        }
+    }
+}
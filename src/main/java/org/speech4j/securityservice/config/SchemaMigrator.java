@@ -0,0 +1,156 @@
+package org.speech4j.securityservice.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.r2dbc.connectionfactory.R2dbcTransactionManager;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings the schema up to date on startup from the versioned scripts
+ * {@code V<version>__<description>.sql} in {@code location}. Each script runs
+ * in its own transaction together with its row in {@code schema_migrations},
+ * under an advisory lock so instances starting at the same time apply it once.
+ * A script that was edited after it was applied fails startup, fixes go into
+ * a new version.
+ */
+@Slf4j
+class SchemaMigrator {
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    // Arbitrary key shared by every instance, pg_advisory_xact_lock releases it on commit or rollback
+    private static final long LOCK_KEY = 0x5ec5e7f1ceL;
+
+    private static final String CREATE_HISTORY = "CREATE TABLE IF NOT EXISTS schema_migrations (" +
+            "version integer NOT NULL PRIMARY KEY, " +
+            "description varchar(128) NOT NULL, " +
+            "checksum varchar(32) NOT NULL, " +
+            "applied_at timestamptz NOT NULL DEFAULT now())";
+
+    private final DatabaseClient client;
+    private final TransactionalOperator transactionalOperator;
+    private final String location;
+    private final Duration timeout;
+
+    SchemaMigrator(ConnectionFactory connectionFactory, String location, Duration timeout) {
+        this.client = DatabaseClient.create(connectionFactory);
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+        this.location = location;
+        this.timeout = timeout;
+    }
+
+    // Blocks startup, nothing else may touch the database before the schema is current
+
+    @PostConstruct
+    public void migrate() {
+        List<Migration> migrations = load();
+        locked(client.execute(CREATE_HISTORY).then())
+                .thenMany(Flux.fromIterable(migrations).concatMap(migration -> locked(apply(migration))))
+                .then()
+                .block(timeout);
+        LOGGER.info("Database schema is up to date at version {}",
+                migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version);
+    }
+
+    private Mono<Void> apply(Migration migration) {
+        return client.execute("SELECT checksum FROM schema_migrations WHERE version = :version")
+                .bind("version", migration.version)
+                .map(row -> row.get("checksum", String.class))
+                .one()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(applied -> {
+                    if (!applied.isPresent()) {
+                        return run(migration);
+                    }
+                    if (!applied.get().equals(migration.checksum)) {
+                        return Mono.error(new IllegalStateException("Migration " + migration.name +
+                                " was changed after it had been applied"));
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> run(Migration migration) {
+        LOGGER.info("Applying migration {}", migration.name);
+        // No bind parameters, so the driver sends the script as one multi-statement query
+        return client.execute(migration.sql).then()
+                .then(client.execute("INSERT INTO schema_migrations (version, description, checksum) " +
+                        "VALUES (:version, :description, :checksum)")
+                        .bind("version", migration.version)
+                        .bind("description", migration.description)
+                        .bind("checksum", migration.checksum)
+                        .then());
+    }
+
+    private Mono<Void> locked(Mono<Void> work) {
+        return transactionalOperator.transactional(
+                client.execute("SELECT pg_advisory_xact_lock(:key)")
+                        .bind("key", LOCK_KEY)
+                        .then()
+                        .then(work));
+    }
+
+    private List<Migration> load() {
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver().getResources(location + "/V*__*.sql");
+            List<Migration> migrations = new ArrayList<>(resources.length);
+            for (Resource resource : resources) {
+                Matcher name = FILE_NAME.matcher(resource.getFilename());
+                if (!name.matches()) {
+                    throw new IllegalStateException("Migration file name must be V<version>__<description>.sql: " +
+                            resource.getFilename());
+                }
+                try (InputStream in = resource.getInputStream()) {
+                    byte[] script = StreamUtils.copyToByteArray(in);
+                    migrations.add(new Migration(Integer.parseInt(name.group(1)), name.group(2),
+                            new String(script, StandardCharsets.UTF_8), DigestUtils.md5DigestAsHex(script)));
+                }
+            }
+            migrations.sort(Comparator.comparingInt(migration -> migration.version));
+            for (int i = 1; i < migrations.size(); i++) {
+                if (migrations.get(i).version == migrations.get(i - 1).version) {
+                    throw new IllegalStateException("Duplicate migration version " + migrations.get(i).version);
+                }
+            }
+            return migrations;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read migrations from " + location, e);
+        }
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final String sql;
+        private final String checksum;
+        private final String name;
+
+        private Migration(int version, String description, String sql, String checksum) {
+            this.version = version;
+            this.description = description;
+            this.sql = sql;
+            this.checksum = checksum;
+            this.name = "V" + version + "__" + description;
+        }
+    }
+}
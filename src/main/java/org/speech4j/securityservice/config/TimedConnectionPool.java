@@ -0,0 +1,44 @@
+package org.speech4j.securityservice.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ConnectionPool} that records how long callers wait to acquire a
+ * connection. Pool size gauges are bound by Spring Boot for any
+ * {@link ConnectionPool} bean, so only the acquire latency is added here.
+ */
+class TimedConnectionPool extends ConnectionPool {
+
+    private final Timer acquired;
+    private final Timer failed;
+
+    TimedConnectionPool(ConnectionPoolConfiguration configuration, MeterRegistry registry) {
+        super(configuration);
+        this.acquired = Timer.builder("r2dbc.pool.acquire")
+                .description("Time spent waiting for a pooled connection")
+                .tag("outcome", "success")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.failed = Timer.builder("r2dbc.pool.acquire")
+                .description("Time spent waiting for a pooled connection")
+                .tag("outcome", "failure")
+                .register(registry);
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return super.create()
+                    .doOnSuccess(connection -> acquired.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(error -> failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+}
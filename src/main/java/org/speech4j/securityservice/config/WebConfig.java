@@ -3,12 +3,17 @@ package org.speech4j.securityservice.config;
 import com.nimbusds.jose.util.IntegerUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.speech4j.securityservice.handler.AuthHandler;
+import org.speech4j.securityservice.handler.JwksHandler;
 import org.speech4j.securityservice.handler.RoleHandler;
+import org.speech4j.securityservice.handler.SigningKeyHandler;
 import org.speech4j.securityservice.handler.UserHandler;
+import org.speech4j.securityservice.util.NdjsonUtil;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.config.EnableWebFlux;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
@@ -25,41 +30,68 @@ import static org.springframework.web.reactive.function.server.RouterFunctions.r
 @EnableWebFlux
 public class WebConfig implements WebFluxConfigurer {
 
+    // The stock decoder knows application/stream+json but not application/x-ndjson, the type we export with
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(
+                Jackson2ObjectMapperBuilder.json().build(),
+                MediaType.APPLICATION_JSON,
+                new MediaType("application", "*+json"),
+                MediaType.APPLICATION_STREAM_JSON,
+                NdjsonUtil.APPLICATION_NDJSON));
+    }
+
     @Bean
     RouterFunction<ServerResponse> userRoutes(UserHandler handler) {
         return route(GET("/users").and(accept(APPLICATION_JSON)), handler::getUsers)
                 .andRoute(GET("/users").and(hasQueryParam("email")), handler::getUserByEmail)
                 .andRoute(GET("/users").and(hasQueryParam("username")), handler::getUserByUsername)
+                .andRoute(GET("/users/export"), handler::exportUsers)
+                .andRoute(POST("/users/import"), handler::importUsers)
+                .andRoute(POST("/users/batch"), handler::getUsersByIds)
                 .andRoute(GET("/users/{id}").and(accept(APPLICATION_JSON)), handler::getUserById)
                 .andRoute(PUT("/users/{id}").and(accept(APPLICATION_JSON)), handler::updateUser)
                 .andRoute(DELETE("/users/{id}").and(accept(APPLICATION_JSON)), handler::deleteUser)
                 .andRoute(GET("/users/{id}/roles").and(accept(APPLICATION_JSON)), handler::getRolesByUserId)
                 .andRoute(POST("/users/{id}/roles").and(accept(APPLICATION_JSON)), handler::addRoleToUser)
+                .andRoute(PUT("/users/{id}/roles"), handler::setUserRoles)
                 .andRoute(DELETE("/users/{userId}/roles/{roleId}").and(accept(APPLICATION_JSON)), handler::removeRoleFromUser);
     }
 
     @Bean
     RouterFunction<ServerResponse> authRoutes(AuthHandler handler) {
         return route(POST("/login").and(accept(APPLICATION_JSON)), handler::login)
+               .andRoute(POST("/token/refresh").and(accept(APPLICATION_JSON)), handler::refresh)
+               .andRoute(POST("/logout"), handler::logout)
                .andRoute(POST("/register").and(accept(APPLICATION_JSON)), handler::register);
     }
 
+    @Bean
+    RouterFunction<ServerResponse> jwksRoutes(JwksHandler handler) {
+        return route(GET("/.well-known/jwks.json"), handler::getJwks);
+    }
+
+    @Bean
+    RouterFunction<ServerResponse> signingKeyRoutes(SigningKeyHandler handler) {
+        return route(POST("/keys/rotate"), handler::rotate)
+                .andRoute(DELETE("/keys/{kid}"), handler::retire);
+    }
+
     @Bean
     RouterFunction<ServerResponse> roleRoutes(RoleHandler handler) {
         return route(POST("/roles").and(accept(APPLICATION_JSON)), handler::createRole)
                 .andRoute(GET("/roles"), handler::getRoles)
                 .andRoute(GET("/roles/{id}"), handler::getRoleById)
                 .andRoute(PUT("/roles/{id}").and(accept(APPLICATION_JSON)), handler::updateRole)
-                .andRoute(DELETE("/roles/{id}"), handler::deleteRole);
+                .andRoute(DELETE("/roles/{id}"), handler::deleteRole)
+                .andRoute(GET("/roles/{id}/users"), handler::getRoleUsers)
+                .andRoute(POST("/roles/{id}/users"), handler::addRoleToUsers)
+                .andRoute(DELETE("/roles/{id}/users"), handler::removeRoleFromUsers);
     }
 
     public static RequestPredicate hasQueryParam(String name) {
         return RequestPredicates.queryParam(name, StringUtils::hasText);
     }
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
-    }
-
 }
@@ -38,13 +38,23 @@ public class WebSecurityConfig {
                 .csrf().disable()
                 .formLogin().disable()
                 .httpBasic().disable()
+                .logout().disable()
                 .authenticationManager(manager)
                 .securityContextRepository(repository)
                 .authorizeExchange()
-                .pathMatchers("/actuator/**").permitAll()
+                .pathMatchers("/actuator/health/**", "/actuator/info").permitAll()
+                // Metrics expose latencies, rejections and pool state, and anyone can register an account
+                .pathMatchers("/actuator/**").hasAuthority("admin")
                 .pathMatchers("/register").permitAll()
                 .pathMatchers("/login").permitAll()
+                .pathMatchers("/token/refresh").permitAll()
+                .pathMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
                 .pathMatchers("/users").hasAuthority("admin")
+                .pathMatchers("/users/export").hasAuthority("admin")
+                .pathMatchers("/users/import").hasAuthority("admin")
+                .pathMatchers("/keys/**").hasAuthority("admin")
+                .pathMatchers("/roles/*/users").hasAuthority("admin")
+                .pathMatchers(HttpMethod.PUT, "/users/*/roles").hasAuthority("admin")
                 .pathMatchers(HttpMethod.DELETE, "/users").hasAuthority("admin")
                 .anyExchange().authenticated()
                 .and().build();
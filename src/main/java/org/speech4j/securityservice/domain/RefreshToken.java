@@ -0,0 +1,27 @@
+package org.speech4j.securityservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("refresh_tokens")
+public class RefreshToken {
+    @Id
+    private String tokenHash;
+    // Shared by every token rotated from the same login
+    private String familyId;
+    private String username;
+    // Authorities at the time of issue, lockFamily returns null once the user's roles have changed
+    private String[] roles;
+    // roles_version of the user the roles were read at
+    private long rolesVersion;
+    private Instant createdAt;
+    private Instant expiresAt;
+}
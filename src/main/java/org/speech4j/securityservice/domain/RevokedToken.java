@@ -0,0 +1,20 @@
+package org.speech4j.securityservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("revoked_tokens")
+public class RevokedToken {
+    @Id
+    private String jti;
+    private Instant expiresAt;
+    private Instant revokedAt;
+}
@@ -0,0 +1,25 @@
+package org.speech4j.securityservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("signing_keys")
+public class SigningKey {
+    @Id
+    private String kid;
+    private String algorithm;
+    @ToString.Exclude
+    private byte[] privateKey;
+    private byte[] publicKey;
+    private Instant createdAt;
+    private Instant activatesAt;
+}
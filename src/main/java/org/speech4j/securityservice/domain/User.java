@@ -30,6 +30,8 @@ public class User implements UserDetails {
     private String email;
     private String password;
     private Set<Role> roles;
+    // Bumped on every change to the user's roles, read together with them
+    private long rolesVersion;
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
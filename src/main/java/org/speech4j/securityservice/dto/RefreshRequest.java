@@ -0,0 +1,16 @@
+package org.speech4j.securityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.speech4j.securityservice.dto.validation.New;
+
+import javax.validation.constraints.NotBlank;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshRequest {
+    @NotBlank(groups = {New.class})
+    private String refreshToken;
+}
@@ -0,0 +1,19 @@
+package org.speech4j.securityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of granting or revoking a role for many users at once.
+ * {@code changed} leaves out users that already had the requested state
+ * and ids that don't belong to any user.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RoleAssignmentResult {
+    private int roleId;
+    private int requested;
+    private int changed;
+}
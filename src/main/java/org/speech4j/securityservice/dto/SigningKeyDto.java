@@ -0,0 +1,18 @@
+package org.speech4j.securityservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SigningKeyDto {
+    private String kid;
+    private String algorithm;
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
+    private Instant activatesAt;
+}
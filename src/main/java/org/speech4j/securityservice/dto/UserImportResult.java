@@ -0,0 +1,27 @@
+package org.speech4j.securityservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one row of a bulk import. {@code row} is the zero-based position
+ * of the user in the request, results are streamed as soon as they are known
+ * and don't keep the request order.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserImportResult {
+    private long row;
+    private Status status;
+    private String id;
+    private String username;
+    private String message;
+
+    public enum Status {
+        CREATED, EXISTS, INVALID, FAILED
+    }
+}
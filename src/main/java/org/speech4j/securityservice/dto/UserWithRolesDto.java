@@ -0,0 +1,19 @@
+package org.speech4j.securityservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserWithRolesDto {
+    private String id;
+    private String username;
+    private String email;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<RoleDto> roles;
+}
@@ -2,23 +2,37 @@ package org.speech4j.securityservice.exception;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.SneakyThrows;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.web.reactive.HandlerMapping;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Configuration
 public class GlobalErrorHandler implements ErrorWebExceptionHandler {
 
     private ObjectMapper mapper = new ObjectMapper();
+    private MeterRegistry registry;
+    // Counters by uri, status and exception, registered on their first error
+    private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GlobalErrorHandler(MeterRegistry registry) {
+        this.registry = registry;
+    }
 
     @SneakyThrows
     @Override
@@ -27,21 +41,45 @@ public class GlobalErrorHandler implements ErrorWebExceptionHandler {
         Map<String, String> errorBody = new HashMap<>();
         if (ex instanceof EntityExistsException || ex instanceof DataOperationException) {
             exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
+            countError(exchange, ex);
             errorBody.put("message", ex.getMessage());
             return getJsonMessage(exchange, bufferFactory, errorBody);
         }
         if (ex instanceof EntityNotFoundException) {
             exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
+            countError(exchange, ex);
+            return getJsonMessage(exchange, bufferFactory, errorBody);
+        }
+        if (ex instanceof ServiceUnavailableException) {
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            countError(exchange, ex);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            errorBody.put("message", ex.getMessage());
             return getJsonMessage(exchange, bufferFactory, errorBody);
         }
 
         exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
+        countError(exchange, ex);
         exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
         errorBody.put("message", "unknown server-side error");
         DataBuffer dataBuffer = bufferFactory.wrap(mapper.writeValueAsBytes(errorBody));
         return exchange.getResponse().writeWith(Mono.just(dataBuffer));
     }
 
+    private void countError(ServerWebExchange exchange, Throwable ex) {
+        Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        String status = String.valueOf(exchange.getResponse().getRawStatusCode());
+        Class<? extends Throwable> type = ex.getClass();
+        errorCounters.computeIfAbsent(uri + ' ' + status + ' ' + type.getName(), key -> Counter.builder("http.server.errors")
+                .description("Errors mapped to a response by the global error handler")
+                .tag("uri", uri)
+                .tag("status", status)
+                .tag("exception", type.getSimpleName())
+                .register(registry))
+                .increment();
+    }
+
     private Mono<Void> getJsonMessage(ServerWebExchange exchange, DataBufferFactory bufferFactory, Map<String, String> errorBody) {
         DataBuffer dataBuffer;
         try {
@@ -0,0 +1,20 @@
+package org.speech4j.securityservice.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+
+    private String message;
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+        this.message = message;
+    }
+
+    @Override
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
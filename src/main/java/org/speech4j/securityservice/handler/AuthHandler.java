@@ -1,24 +1,34 @@
 package org.speech4j.securityservice.handler;
 
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.java.Log;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.speech4j.securityservice.domain.User;
 import org.speech4j.securityservice.dto.AuthRequest;
 import org.speech4j.securityservice.dto.AuthResponse;
+import org.speech4j.securityservice.dto.RefreshRequest;
 import org.speech4j.securityservice.dto.UserDto;
 import org.speech4j.securityservice.dto.validation.New;
+import org.speech4j.securityservice.exception.EntityNotFoundException;
+import org.speech4j.securityservice.security.ClientAddressResolver;
+import org.speech4j.securityservice.security.LoginRateLimiter;
+import org.speech4j.securityservice.security.PasswordHasher;
+import org.speech4j.securityservice.service.RefreshTokenService;
+import org.speech4j.securityservice.service.RevocationService;
 import org.speech4j.securityservice.service.UserService;
 import org.speech4j.securityservice.service.UserServiceImpl;
 import org.speech4j.securityservice.util.JWTUtil;
 import org.speech4j.securityservice.util.ValidationUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
@@ -26,7 +36,10 @@ import reactor.core.publisher.Mono;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
@@ -36,45 +49,115 @@ import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 public class AuthHandler {
 
     private UserService service;
+    private RefreshTokenService refreshTokenService;
+    private RevocationService revocationService;
     private Validator validator;
-    private PasswordEncoder encoder;
+    private PasswordHasher hasher;
     private JWTUtil jwtUtil;
     private ValidationUtil validationUtil;
-    private ModelMapper mapper = new ModelMapper();
+    private LoginRateLimiter rateLimiter;
+    private ClientAddressResolver clientAddressResolver;
+
+    // Throttled logins are answered from these, indexed by Retry-After seconds
+    private static final int CACHED_RETRY_AFTER = 60;
+    private List<Mono<ServerResponse>> tooManyRequests;
+
+    // Stages of login, timed separately to see which one dominates under load
+    private Timer lookupTimer;
+    private Timer passwordTimer;
+    private Timer tokenTimer;
 
     @Autowired
-    public AuthHandler(UserService service, Validator validator,
-                       PasswordEncoder encoder, JWTUtil jwtUtil,
-                       ValidationUtil validationUtil) {
+    public AuthHandler(UserService service, RefreshTokenService refreshTokenService,
+                       RevocationService revocationService, Validator validator,
+                       PasswordHasher hasher, JWTUtil jwtUtil,
+                       ValidationUtil validationUtil, LoginRateLimiter rateLimiter,
+                       ClientAddressResolver clientAddressResolver, MeterRegistry registry) {
         this.service = service;
+        this.refreshTokenService = refreshTokenService;
+        this.revocationService = revocationService;
         this.validator = validator;
         this.validationUtil = validationUtil;
-        this.encoder = encoder;
+        this.hasher = hasher;
         this.jwtUtil = jwtUtil;
+        this.rateLimiter = rateLimiter;
+        this.clientAddressResolver = clientAddressResolver;
+        this.tooManyRequests = tooManyRequestsResponses();
+        this.lookupTimer = stageTimer("lookup", registry);
+        this.passwordTimer = stageTimer("password", registry);
+        this.tokenTimer = stageTimer("token", registry);
     }
 
+    // Throttling comes first, a refused attempt never reaches the database or the password hash
+
     public Mono<ServerResponse> login(ServerRequest request) {
+        String address = clientAddressResolver.resolve(request);
+        long addressWait = rateLimiter.acquireAddress(address);
+        if (addressWait > 0) {
+            return tooManyRequests(addressWait);
+        }
         return request.bodyToMono(AuthRequest.class).flatMap(body -> {
             Set<ConstraintViolation<AuthRequest>> errors = validator.validate(body, New.class);
             if (!errors.isEmpty()) {
                 return validationUtil.validateMono(errors);
-            } else {
-                return service.findByUsername(body.getUsername()).flatMap(user -> {
-                    if (encoder.matches(body.getPassword(), user.getPassword())) {
-                        String token = jwtUtil.generateToken(user);
-                        AuthResponse response = new AuthResponse(token);
-                        return ServerResponse.ok()
-                                .contentType(APPLICATION_JSON)
-                                .body(fromValue(response));
+            }
+            long usernameWait = rateLimiter.acquireUsername(body.getUsername());
+            if (usernameWait > 0) {
+                return tooManyRequests(usernameWait);
+            }
+            return timed(lookupTimer, service.findByUsername(body.getUsername())).flatMap(user ->
+                timed(passwordTimer, hasher.matches(body.getPassword(), user.getPassword())).flatMap(matches -> {
+                    if (matches) {
+                        rateLimiter.onSuccess(body.getUsername());
+                        service.rehashPasswordIfNeeded(user, body.getPassword());
+                        String token = tokenTimer.record(() -> jwtUtil.generateToken(user));
+                        return refreshTokenService.issue(user).flatMap(refreshToken ->
+                                ServerResponse.ok()
+                                        .contentType(APPLICATION_JSON)
+                                        .body(fromValue(new AuthResponse(token, refreshToken))));
                     } else {
                         LOGGER.debug("Password doesn't match");
+                        rateLimiter.onFailure(body.getUsername(), address);
                         return ServerResponse.status(HttpStatus.UNAUTHORIZED).build();
                     }
-                }).doOnError(err -> LOGGER.error("Error {}", err));
+                })
+            ).doOnError(EntityNotFoundException.class, err -> rateLimiter.onFailure(body.getUsername(), address))
+            .doOnError(err -> LOGGER.error("Error {}", err));
+        });
+    }
+
+    // Trades a refresh token for a new access token, without a password check
+
+    public Mono<ServerResponse> refresh(ServerRequest request) {
+        return request.bodyToMono(RefreshRequest.class).flatMap(body -> {
+            Set<ConstraintViolation<RefreshRequest>> errors = validator.validate(body, New.class);
+            if (!errors.isEmpty()) {
+                return validationUtil.validateMono(errors);
             }
+            return refreshTokenService.refresh(body.getRefreshToken())
+                    .flatMap(response -> ServerResponse.ok()
+                            .contentType(APPLICATION_JSON)
+                            .body(fromValue(response)))
+                    .switchIfEmpty(ServerResponse.status(HttpStatus.UNAUTHORIZED).build());
         });
     }
 
+    // Revokes the presented access token and, when given in the body, its refresh token
+
+    public Mono<ServerResponse> logout(ServerRequest request) {
+        Mono<Void> accessToken = request.principal()
+                .cast(Authentication.class)
+                .map(Authentication::getDetails)
+                .cast(Claims.class)
+                .filter(claims -> claims.getId() != null)
+                .flatMap(claims -> revocationService.revoke(claims.getId(), claims.getExpiration()));
+        Mono<Void> refreshToken = request.bodyToMono(RefreshRequest.class)
+                .filter(body -> body.getRefreshToken() != null)
+                .flatMap(body -> refreshTokenService.revoke(body.getRefreshToken()));
+        return accessToken.then(refreshToken)
+                .then(ServerResponse.noContent().build());
+    }
+
     public Mono<ServerResponse> register(ServerRequest request) {
         return request.bodyToMono(UserDto.class).flatMap(body -> {
             Set<ConstraintViolation<UserDto>> errors = validator.validate(body, New.class);
@@ -88,4 +171,43 @@ public class AuthHandler {
         });
     }
 
+    private Mono<ServerResponse> tooManyRequests(long waitMillis) {
+        long seconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(waitMillis + 999));
+        if (seconds <= CACHED_RETRY_AFTER) {
+            return tooManyRequests.get((int) seconds - 1);
+        }
+        return ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .build();
+    }
+
+    // ServerResponse is immutable, so the same instance can answer every throttled request
+
+    private static List<Mono<ServerResponse>> tooManyRequestsResponses() {
+        List<Mono<ServerResponse>> responses = new ArrayList<>(CACHED_RETRY_AFTER);
+        for (int seconds = 1; seconds <= CACHED_RETRY_AFTER; seconds++) {
+            responses.add(ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                    .build()
+                    .cache());
+        }
+        return responses;
+    }
+
+
+    private static Timer stageTimer(String stage, MeterRegistry registry) {
+        return Timer.builder("login.stage")
+                .description("Time spent in each stage of a login request")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static <T> Mono<T> timed(Timer timer, Mono<T> stage) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return stage.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
 }
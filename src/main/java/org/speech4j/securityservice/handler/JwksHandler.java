@@ -0,0 +1,85 @@
+package org.speech4j.securityservice.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.speech4j.securityservice.util.JWTUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.web.reactive.function.BodyInserters.fromValue;
+
+/**
+ * Serves the public signing keys as a JWK Set. The document is rendered once
+ * per key set and answered with an ETag and Cache-Control, so downstream
+ * services can verify tokens offline and only revalidate now and then.
+ */
+@Slf4j
+@Component
+public class JwksHandler {
+
+    private JWTUtil jwtUtil;
+    private ObjectMapper mapper;
+    private CacheControl cacheControl;
+
+    private volatile Rendered rendered;
+
+    @Autowired
+    public JwksHandler(JWTUtil jwtUtil, ObjectMapper mapper,
+                       @Value("${jwt.jwks.max-age:5m}") Duration maxAge) {
+        this.jwtUtil = jwtUtil;
+        this.mapper = mapper;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic();
+    }
+
+    public Mono<ServerResponse> getJwks(ServerRequest request) {
+        Rendered current = render();
+        return request.checkNotModified(current.etag)
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                        .contentType(APPLICATION_JSON)
+                        .cacheControl(cacheControl)
+                        .eTag(current.etag)
+                        .body(fromValue(current.body))));
+    }
+
+    // Re-rendered only when JWTUtil hands out a different key set
+
+    private Rendered render() {
+        Map<String, Object> jwks = jwtUtil.getJwks();
+        Rendered current = rendered;
+        if (current != null && current.source == jwks) {
+            return current;
+        }
+        try {
+            byte[] body = mapper.writeValueAsBytes(jwks);
+            current = new Rendered(jwks, body, "\"" + DigestUtils.md5DigestAsHex(body) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot render JWK Set", e);
+        }
+        LOGGER.debug("JWK Set rendered [etag: {}]", current.etag);
+        rendered = current;
+        return current;
+    }
+
+    private static final class Rendered {
+        private final Map<String, Object> source;
+        private final byte[] body;
+        private final String etag;
+
+        private Rendered(Map<String, Object> source, byte[] body, String etag) {
+            this.source = source;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package org.speech4j.securityservice.handler;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.slf4j.Slf4j;
+import org.speech4j.securityservice.dto.RoleAssignmentResult;
 import org.speech4j.securityservice.dto.RoleDto;
 import org.speech4j.securityservice.dto.UserDto;
 import org.speech4j.securityservice.dto.validation.Existing;
 import org.speech4j.securityservice.dto.validation.New;
 import org.speech4j.securityservice.service.RoleService;
+import org.speech4j.securityservice.service.UserService;
+import org.speech4j.securityservice.util.NdjsonUtil;
+import org.speech4j.securityservice.util.PageCursor;
 import org.speech4j.securityservice.util.ValidationUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
@@ -17,23 +23,40 @@ import reactor.core.publisher.Mono;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.function.BiFunction;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 
 @Component
 @Slf4j
 public class RoleHandler {
 
     private RoleService service;
+    private UserService userService;
     private Validator validator;
     private ValidationUtil validationUtil;
+    private NdjsonUtil ndjsonUtil;
+    private int maxBatchSize;
+    private int maxPageSize;
+
+    private static final Integer MAX = 10;
 
     @Autowired
-    public RoleHandler(RoleService service, Validator validator, ValidationUtil validationUtil) {
+    public RoleHandler(RoleService service, UserService userService, Validator validator,
+                       ValidationUtil validationUtil, NdjsonUtil ndjsonUtil,
+                       @Value("${roles.batch.max-size:100000}") int maxBatchSize,
+                       @Value("${users.page.max-size:100}") int maxPageSize) {
         this.service = service;
+        this.userService = userService;
         this.validator = validator;
         this.validationUtil = validationUtil;
+        this.ndjsonUtil = ndjsonUtil;
+        this.maxBatchSize = maxBatchSize;
+        this.maxPageSize = maxPageSize;
     }
 
     public Mono<ServerResponse> getRoles(ServerRequest request) {
@@ -90,4 +113,87 @@ public class RoleHandler {
         int id = Integer.parseInt(request.pathVariable("id"));
         return ServerResponse.ok().build(service.delete(id));
     }
+
+    // Pages through the holders by user id, or streams all of them after the cursor when NDJSON is accepted
+
+    public Mono<ServerResponse> getRoleUsers(ServerRequest request) {
+        int id;
+        String after;
+        try {
+            id = Integer.parseInt(request.pathVariable("id"));
+        } catch (Exception e) {
+            LOGGER.error("Path variable parse to int error");
+            return ServerResponse.badRequest().build();
+        }
+        try {
+            after = request.queryParam("cursor").map(PageCursor::decode).orElse(PageCursor.FIRST);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Cursor invalid, errorMsg: {}", e.getLocalizedMessage());
+            return ServerResponse.badRequest().build();
+        }
+
+        if (request.headers().accept().stream().anyMatch(NdjsonUtil.APPLICATION_NDJSON::equalsTypeAndSubtype)) {
+            LOGGER.debug("Streaming users of role {} [after: {}]", id, after);
+            return service.getById(id).flatMap(role -> ndjsonUtil.ok(userService.streamByRoleId(id, after)));
+        }
+
+        int max;
+        try {
+            max = Integer.parseInt(request.queryParam("max").orElse(MAX.toString()));
+        } catch (NumberFormatException e) {
+            LOGGER.error("Params invalid, errorMsg: {}, error: {}", e.getLocalizedMessage(), e);
+            max = MAX;
+        }
+        int pageSize = Math.max(0, Math.min(max, maxPageSize));
+        LOGGER.debug("Got params: [role: {}, max: {}, after: {}]", id, pageSize, after);
+
+        return service.getById(id)
+                .then(userService.getPageByRoleId(id, after, pageSize).collectList())
+                .flatMap(users -> {
+                    ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(APPLICATION_JSON);
+                    if (pageSize > 0 && users.size() == pageSize) {
+                        response.header(PageCursor.NEXT_CURSOR_HEADER,
+                                PageCursor.encode(users.get(pageSize - 1).getId()));
+                    }
+                    return response.body(fromValue(users));
+                });
+    }
+
+    public Mono<ServerResponse> addRoleToUsers(ServerRequest request) {
+        return changeUsers(request, service::addRoleToUsers);
+    }
+
+    public Mono<ServerResponse> removeRoleFromUsers(ServerRequest request) {
+        return changeUsers(request, service::removeRoleFromUsers);
+    }
+
+    // User ids come as a JSON array or NDJSON, the whole list is applied in one statement
+
+    private Mono<ServerResponse> changeUsers(ServerRequest request,
+                                             BiFunction<Integer, List<String>, Mono<RoleAssignmentResult>> change) {
+        int id;
+        try {
+            id = Integer.parseInt(request.pathVariable("id"));
+        } catch (Exception e) {
+            LOGGER.error("Path variable parse to int error");
+            return ServerResponse.badRequest().build();
+        }
+        // Read as JSON nodes, asking for String would hand the raw text to the plain string decoder
+        return request.bodyToFlux(JsonNode.class)
+                .map(JsonNode::asText)
+                .take(maxBatchSize + 1L)
+                .collectList()
+                .flatMap(userIds -> {
+                    if (userIds.size() > maxBatchSize) {
+                        LOGGER.error("Role batch exceeds {} users", maxBatchSize);
+                        return ServerResponse.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                                .contentType(APPLICATION_JSON)
+                                .body(fromValue(Collections.singletonMap("message",
+                                        "At most " + maxBatchSize + " users per request")));
+                    }
+                    return ServerResponse.ok()
+                            .contentType(APPLICATION_JSON)
+                            .body(change.apply(id, userIds), RoleAssignmentResult.class);
+                });
+    }
 }
@@ -0,0 +1,47 @@
+package org.speech4j.securityservice.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.speech4j.securityservice.dto.SigningKeyDto;
+import org.speech4j.securityservice.service.SigningKeyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@Component
+@Slf4j
+public class SigningKeyHandler {
+
+    private SigningKeyService service;
+
+    @Autowired
+    public SigningKeyHandler(SigningKeyService service) {
+        this.service = service;
+    }
+
+    /**
+     * Adds a new signing key. By default it is published first and signs only
+     * after the activation delay. With {@code immediate=true} it signs at once,
+     * and other instances may reject its tokens until their next refresh.
+     * Tokens of the previous key stay valid either way, a compromised key has
+     * to be retired.
+     */
+    public Mono<ServerResponse> rotate(ServerRequest request) {
+        boolean immediate = request.queryParam("immediate").map(Boolean::parseBoolean).orElse(false);
+        return ServerResponse.status(HttpStatus.CREATED)
+                .contentType(APPLICATION_JSON)
+                .body(service.rotate(immediate), SigningKeyDto.class);
+    }
+
+    // For a compromised key, its tokens are rejected everywhere as soon as the peers are notified
+
+    public Mono<ServerResponse> retire(ServerRequest request) {
+        String kid = request.pathVariable("kid");
+        LOGGER.warn("Retiring signing key {}", kid);
+        return service.retire(kid).then(ServerResponse.noContent().build());
+    }
+}
@@ -1,25 +1,37 @@
 package org.speech4j.securityservice.handler;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.slf4j.Slf4j;
 import org.speech4j.securityservice.domain.Role;
 import org.speech4j.securityservice.dto.RoleDto;
 import org.speech4j.securityservice.dto.UserDto;
+import org.speech4j.securityservice.dto.UserImportResult;
+import org.speech4j.securityservice.dto.UserWithRolesDto;
 import org.speech4j.securityservice.dto.validation.Existing;
+import org.speech4j.securityservice.dto.validation.New;
 import org.speech4j.securityservice.service.RoleService;
 import org.speech4j.securityservice.service.UserService;
+import org.speech4j.securityservice.util.NdjsonUtil;
+import org.speech4j.securityservice.util.PageCursor;
 import org.speech4j.securityservice.util.ValidationUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.util.Collections;
 import java.util.Set;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 
 @Slf4j
 @Component
@@ -29,36 +41,75 @@ public class UserHandler {
     private RoleService roleService;
     private Validator validator;
     private ValidationUtil validationUtil;
+    private NdjsonUtil ndjsonUtil;
+
+    private int maxPageSize;
+    private int maxBatchSize;
 
     private static final Integer MAX = 10;
     private static final Integer OFFSET = 0;
 
     @Autowired
     public UserHandler(UserService userService, Validator validator,
-                       ValidationUtil validationUtil, RoleService roleService) {
+                       ValidationUtil validationUtil, RoleService roleService,
+                       NdjsonUtil ndjsonUtil,
+                       @Value("${users.page.max-size:100}") int maxPageSize,
+                       @Value("${users.batch.max-size:1000}") int maxBatchSize) {
         this.userService = userService;
         this.roleService = roleService;
         this.validator = validator;
         this.validationUtil = validationUtil;
+        this.ndjsonUtil = ndjsonUtil;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
     }
 
     public Mono<ServerResponse> getUsers(ServerRequest request) {
         int max;
-        int offset;
-
         try {
             String maxParam = request.queryParam("max").orElse(MAX.toString());
-            String offsetParam = request.queryParam("offset").orElse(OFFSET.toString());
-            LOGGER.debug("Got params: [max: {}, offset: {}]", maxParam, offsetParam);
             max = Integer.parseInt(maxParam);
-            offset = Integer.parseInt(offsetParam);
-        } catch(NumberFormatException | NullPointerException e) {
+        } catch (NumberFormatException e) {
             LOGGER.error("Params invalid, errorMsg: {}, error: {}", e.getLocalizedMessage(), e);
             max = MAX;
-            offset = OFFSET;
         }
+        max = Math.max(0, Math.min(max, maxPageSize));
+
+        if (request.queryParam("offset").isPresent()) {
+            return getUsersByOffset(request, max);
+        }
+
+        String after;
+        try {
+            after = request.queryParam("cursor").map(PageCursor::decode).orElse(PageCursor.FIRST);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Cursor invalid, errorMsg: {}", e.getLocalizedMessage());
+            return ServerResponse.badRequest().build();
+        }
+        LOGGER.debug("Got params: [max: {}, after: {}]", max, after);
+
+        int pageSize = max;
+        return userService.getPage(after, pageSize).collectList().flatMap(users -> {
+            ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(APPLICATION_JSON);
+            if (pageSize > 0 && users.size() == pageSize) {
+                response.header(PageCursor.NEXT_CURSOR_HEADER, PageCursor.encode(users.get(pageSize - 1).getId()));
+            }
+            return response.body(fromValue(users));
+        });
+    }
+
+    // Kept for existing clients, cost grows with the offset
 
-        max = Math.max(0, Math.min(max, MAX));
+    private Mono<ServerResponse> getUsersByOffset(ServerRequest request, int max) {
+        int offset;
+        try {
+            String offsetParam = request.queryParam("offset").orElse(OFFSET.toString());
+            LOGGER.debug("Got params: [max: {}, offset: {}]", max, offsetParam);
+            offset = Integer.parseInt(offsetParam);
+        } catch(NumberFormatException e) {
+            LOGGER.error("Params invalid, errorMsg: {}, error: {}", e.getLocalizedMessage(), e);
+            offset = OFFSET;
+        }
         offset = Math.max(OFFSET, offset);
 
         Flux<UserDto> users = userService.get(max, offset);
@@ -67,6 +118,30 @@ public class UserHandler {
             .body(users, UserDto.class);
     }
 
+    public Mono<ServerResponse> exportUsers(ServerRequest request) {
+        boolean withRoles = request.queryParam("roles").map(Boolean::parseBoolean).orElse(false);
+        LOGGER.debug("Exporting users [roles: {}]", withRoles);
+        return ndjsonUtil.ok(userService.export(withRoles));
+    }
+
+    // Reads a JSON array or NDJSON as it arrives, results stream back before the upload has finished
+
+    public Mono<ServerResponse> importUsers(ServerRequest request) {
+        Flux<UserImportResult> results = request.bodyToFlux(UserDto.class)
+                .index()
+                .map(row -> Tuples.of(row, validator.validate(row.getT2(), New.class)))
+                .publish(rows -> Flux.merge(
+                        rows.filter(row -> !row.getT2().isEmpty())
+                                .map(row -> invalidImport(row.getT1(), validationUtil.describe(row.getT2()))),
+                        userService.importUsers(rows.filter(row -> row.getT2().isEmpty()).map(Tuple2::getT1))
+                ));
+        return ndjsonUtil.ok(results);
+    }
+
+    private static UserImportResult invalidImport(Tuple2<Long, UserDto> row, String message) {
+        return new UserImportResult(row.getT1(), UserImportResult.Status.INVALID, null, row.getT2().getUsername(), message);
+    }
+
     public Mono<ServerResponse> getUserById(ServerRequest request) {
         String id = request.pathVariable("id");
         Mono<UserDto> user = userService.getById(id);
@@ -75,6 +150,29 @@ public class UserHandler {
             .body(user, UserDto.class);
     }
 
+    // Ids come as a JSON array or NDJSON and are resolved with one query, roles=true aggregates roles into it
+
+    public Mono<ServerResponse> getUsersByIds(ServerRequest request) {
+        boolean withRoles = request.queryParam("roles").map(Boolean::parseBoolean).orElse(false);
+        return request.bodyToFlux(JsonNode.class)
+                .map(JsonNode::asText)
+                .take(maxBatchSize + 1L)
+                .collectList()
+                .flatMap(ids -> {
+                    if (ids.size() > maxBatchSize) {
+                        LOGGER.error("User batch exceeds {} ids", maxBatchSize);
+                        return ServerResponse.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                                .contentType(APPLICATION_JSON)
+                                .body(fromValue(Collections.singletonMap("message",
+                                        "At most " + maxBatchSize + " ids per request")));
+                    }
+                    LOGGER.debug("Resolving {} users [roles: {}]", ids.size(), withRoles);
+                    return ServerResponse.ok()
+                            .contentType(APPLICATION_JSON)
+                            .body(userService.getByIds(ids, withRoles), UserWithRolesDto.class);
+                });
+    }
+
     public Mono<ServerResponse> getUserByEmail(ServerRequest request) {
         String email = request.queryParam("email").get();
         Mono<UserDto> user = userService.getByEmail(email);
@@ -129,6 +227,17 @@ public class UserHandler {
         );
     }
 
+    // Body is the complete list of role ids the user should have
+
+    public Mono<ServerResponse> setUserRoles(ServerRequest request) {
+        String userId = request.pathVariable("id");
+        return request.bodyToFlux(Integer.class)
+                .collectList()
+                .flatMap(roleIds -> ServerResponse.ok()
+                        .contentType(APPLICATION_JSON)
+                        .body(roleService.setUserRoles(userId, roleIds), RoleDto.class));
+    }
+
     public Mono<ServerResponse> removeRoleFromUser(ServerRequest request) {
         String userId = request.pathVariable("userId");
         int roleId;
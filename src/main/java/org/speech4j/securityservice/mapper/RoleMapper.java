@@ -0,0 +1,35 @@
+package org.speech4j.securityservice.mapper;
+
+import org.speech4j.securityservice.domain.Role;
+import org.speech4j.securityservice.dto.RoleDto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Plain field copies between {@link Role} and {@link RoleDto}.
+ */
+public final class RoleMapper {
+
+    private RoleMapper() {
+    }
+
+    public static RoleDto toDto(Role role) {
+        return new RoleDto(role.getId(), role.getName());
+    }
+
+    public static List<RoleDto> toDtos(Collection<Role> roles) {
+        List<RoleDto> dtos = new ArrayList<>(roles.size());
+        for (Role role : roles) {
+            dtos.add(toDto(role));
+        }
+        return dtos;
+    }
+
+    // A missing id maps to 0, same as for a freshly created Role
+
+    public static Role toEntity(RoleDto dto) {
+        return new Role(dto.getId() == null ? 0 : dto.getId(), dto.getName());
+    }
+}
@@ -0,0 +1,33 @@
+package org.speech4j.securityservice.mapper;
+
+import org.speech4j.securityservice.domain.User;
+import org.speech4j.securityservice.dto.UserDto;
+import org.speech4j.securityservice.dto.UserWithRolesDto;
+
+/**
+ * Plain field copies between {@link User} and its DTOs.
+ */
+public final class UserMapper {
+
+    private UserMapper() {
+    }
+
+    public static UserDto toDto(User user) {
+        return new UserDto(user.getId(), user.getUsername(), user.getEmail(), user.getPassword());
+    }
+
+    // Roles stay null if they weren't loaded with the user
+
+    public static UserWithRolesDto toWithRolesDto(User user) {
+        return new UserWithRolesDto(
+                user.getId(),
+                user.getUsername(),
+                user.getEmail(),
+                user.getRoles() == null ? null : RoleMapper.toDtos(user.getRoles())
+        );
+    }
+
+    public static User toEntity(UserDto dto) {
+        return new User(dto.getId(), dto.getUsername(), dto.getEmail(), dto.getPassword(), null, 0);
+    }
+}
@@ -0,0 +1,51 @@
+package org.speech4j.securityservice.repository;
+
+import org.speech4j.securityservice.domain.RefreshToken;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+@Repository
+public interface RefreshTokenRepository extends ReactiveCrudRepository<RefreshToken, String> {
+
+    @Query("INSERT INTO refresh_tokens (token_hash, family_id, username, roles, roles_version, expires_at) " +
+            "VALUES (:tokenHash, :familyId, :username, :roles, :rolesVersion, :expiresAt)")
+    Mono<Void> create(String tokenHash, String familyId, String username, String[] roles, long rolesVersion,
+                      Instant expiresAt);
+
+    // Locks the family until the refresh commits. The roles come back only if the user's roles_version still
+    // matches, together with the version they have now
+    @Query("SELECT t.token_hash, t.family_id, t.username, " +
+            "CASE WHEN t.roles_version = u.roles_version THEN t.roles END AS roles, " +
+            "u.roles_version, t.created_at, t.expires_at " +
+            "FROM refresh_tokens t JOIN users u ON u.username = t.username " +
+            "WHERE t.family_id = :familyId AND t.expires_at > now() " +
+            "FOR UPDATE OF t")
+    Mono<RefreshToken> lockFamily(String familyId);
+
+    @Modifying
+    @Query("UPDATE refresh_tokens SET token_hash = :tokenHash, roles = :roles, roles_version = :rolesVersion " +
+            "WHERE family_id = :familyId")
+    Mono<Integer> rotate(String familyId, String tokenHash, String[] roles, long rolesVersion);
+
+    @Modifying
+    @Query("DELETE FROM refresh_tokens WHERE family_id = :familyId")
+    Mono<Integer> deleteFamily(String familyId);
+
+    @Modifying
+    @Query("DELETE FROM refresh_tokens WHERE family_id = :familyId AND token_hash = :tokenHash")
+    Mono<Integer> deleteToken(String familyId, String tokenHash);
+
+    @Modifying
+    @Query("DELETE FROM refresh_tokens WHERE username = :username AND expires_at <= now()")
+    Mono<Integer> deleteExpired(String username);
+
+    @Modifying
+    @Query("DELETE FROM refresh_tokens WHERE username = (SELECT username FROM users WHERE id = :userId)")
+    Mono<Integer> deleteByUserId(String userId);
+
+}
@@ -0,0 +1,29 @@
+package org.speech4j.securityservice.repository;
+
+import org.speech4j.securityservice.domain.RevokedToken;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+@Repository
+public interface RevokedTokenRepository extends ReactiveCrudRepository<RevokedToken, String> {
+
+    @Query("INSERT INTO revoked_tokens (jti, expires_at) VALUES (:jti, :expiresAt) ON CONFLICT (jti) DO NOTHING")
+    Mono<Void> create(String jti, Instant expiresAt);
+
+    @Query("SELECT * FROM revoked_tokens WHERE expires_at > now()")
+    Flux<RevokedToken> findActive();
+
+    @Query("SELECT * FROM revoked_tokens WHERE revoked_at > :since AND expires_at > now()")
+    Flux<RevokedToken> findRevokedSince(Instant since);
+
+    @Modifying
+    @Query("DELETE FROM revoked_tokens WHERE expires_at <= now()")
+    Mono<Integer> deleteExpired();
+
+}
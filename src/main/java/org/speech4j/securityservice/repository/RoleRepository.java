@@ -1,6 +1,7 @@
 package org.speech4j.securityservice.repository;
 
 import org.speech4j.securityservice.domain.Role;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
@@ -34,6 +35,17 @@ public interface RoleRepository extends ReactiveCrudRepository<Role, String> {
     @Query(SqlQueries.REMOVE_ROLE_FROM_USER)
     Mono<Void> removeRoleFromUser(String userId, int roleId);
 
+    @Modifying
+    @Query(SqlQueries.ADD_ROLE_TO_USERS)
+    Mono<Integer> addRoleToUsers(int roleId, String[] userIds);
+
+    @Modifying
+    @Query(SqlQueries.REMOVE_ROLE_FROM_USERS)
+    Mono<Integer> removeRoleFromUsers(int roleId, String[] userIds);
+
+    @Query(SqlQueries.SET_USER_ROLES)
+    Mono<Long> setUserRoles(String userId, Integer[] roleIds);
+
     class SqlQueries {
         static final String GET_ROLES_BY_USER_ID = "SELECT roles.id, name " +
                 "FROM roles JOIN users_roles " +
@@ -46,6 +58,28 @@ public interface RoleRepository extends ReactiveCrudRepository<Role, String> {
         static final String REMOVE_ROLE_FROM_USER = "DELETE FROM users_roles " +
                 "WHERE users_id = :userId " +
                 "AND roles_id = :roleId";
+
+        // Batch statements take the whole id list as one array parameter, unknown users are skipped
+
+        static final String ADD_ROLE_TO_USERS = "INSERT INTO users_roles (users_id, roles_id) " +
+                "SELECT users.id, roles.id FROM users JOIN roles ON roles.id = :roleId " +
+                "WHERE users.id = ANY(:userIds) " +
+                "ON CONFLICT DO NOTHING";
+
+        static final String REMOVE_ROLE_FROM_USERS = "DELETE FROM users_roles " +
+                "WHERE roles_id = :roleId " +
+                "AND users_id = ANY(:userIds)";
+
+        // Removes the roles not listed and adds the missing ones in one statement, returns the rows changed
+
+        static final String SET_USER_ROLES = "WITH removed AS (" +
+                "DELETE FROM users_roles WHERE users_id = :userId AND roles_id <> ALL(:roleIds) RETURNING 1" +
+                "), added AS (" +
+                "INSERT INTO users_roles (users_id, roles_id) " +
+                "SELECT users.id, roles.id FROM users JOIN roles ON roles.id = ANY(:roleIds) " +
+                "WHERE users.id = :userId " +
+                "ON CONFLICT DO NOTHING RETURNING 1" +
+                ") SELECT (SELECT count(*) FROM removed) + (SELECT count(*) FROM added)";
     }
 
 }
@@ -0,0 +1,52 @@
+package org.speech4j.securityservice.repository;
+
+import org.speech4j.securityservice.domain.SigningKey;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface SigningKeyRepository extends ReactiveCrudRepository<SigningKey, String> {
+
+    @Query("SELECT * FROM signing_keys ORDER BY activates_at")
+    Flux<SigningKey> findAll();
+
+    @Query(SqlQueries.CREATE)
+    Mono<Void> create(String kid, String algorithm, byte[] privateKey, byte[] publicKey, long delaySeconds);
+
+    // Held until the surrounding transaction ends, pg_advisory_xact_lock itself returns void
+
+    @Query("SELECT true FROM pg_advisory_xact_lock(:key)")
+    Mono<Boolean> lock(long key);
+
+    @Query("SELECT count(*) > 0 FROM signing_keys WHERE created_at > now() - :seconds * interval '1 second'")
+    Mono<Boolean> existsCreatedWithin(long seconds);
+
+    @Modifying
+    @Query("UPDATE signing_keys SET private_key = :privateKey WHERE kid = :kid")
+    Mono<Integer> updatePrivateKey(String kid, byte[] privateKey);
+
+    @Modifying
+    @Query("DELETE FROM signing_keys WHERE kid = :kid")
+    Mono<Integer> deleteByKid(String kid);
+
+    @Modifying
+    @Query(SqlQueries.DELETE_RETIRED)
+    Mono<Integer> deleteRetired(long retentionSeconds);
+
+    class SqlQueries {
+        static final String CREATE = "INSERT INTO signing_keys " +
+                "(kid, algorithm, private_key, public_key, created_at, activates_at) " +
+                "VALUES (:kid, :algorithm, :privateKey, :publicKey, now(), now() + :delaySeconds * interval '1 second')";
+
+        // A key is retired once its successor has been signing for longer than the token lifetime
+        static final String DELETE_RETIRED = "DELETE FROM signing_keys retired " +
+                "WHERE EXISTS (SELECT 1 FROM signing_keys successor " +
+                "WHERE successor.activates_at > retired.activates_at " +
+                "AND successor.activates_at < now() - :retentionSeconds * interval '1 second')";
+    }
+
+}
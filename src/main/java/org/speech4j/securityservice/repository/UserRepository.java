@@ -1,6 +1,7 @@
 package org.speech4j.securityservice.repository;
 
 import org.speech4j.securityservice.domain.User;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
@@ -8,11 +9,20 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Repository
-public interface UserRepository extends ReactiveCrudRepository<User, String> {
+public interface UserRepository extends ReactiveCrudRepository<User, String>, UserRepositoryCustom {
 
-    @Query("SELECT * FROM users LIMIT :max OFFSET :offset")
+    @Query("SELECT * FROM users ORDER BY id LIMIT :max OFFSET :offset")
     Flux<User> findAll(int max, int offset);
 
+    @Query("SELECT * FROM users WHERE id > :after ORDER BY id LIMIT :max")
+    Flux<User> findAllAfter(String after, int max);
+
+    // Walks the (roles_id, users_id) index in key order, so every page is a range scan
+    @Query("SELECT users.* FROM users_roles JOIN users ON users.id = users_roles.users_id " +
+            "WHERE users_roles.roles_id = :roleId AND users_roles.users_id > :after " +
+            "ORDER BY users_roles.users_id LIMIT :max")
+    Flux<User> findByRoleIdAfter(int roleId, String after, int max);
+
     @Query("SELECT * FROM users WHERE email = :email")
     Mono<User> findByEmail(String email);
 
@@ -22,7 +32,33 @@ public interface UserRepository extends ReactiveCrudRepository<User, String> {
     @Query("INSERT INTO users (id, email, password, username) VALUES (:id, :email, :password, :username)")
     Mono<User> create(String id, String email, String password, String username);
 
+    // One statement per batch, rows that clash with an existing id, email or username are skipped
+    @Query("INSERT INTO users (id, email, password, username) " +
+            "SELECT * FROM unnest(:ids::varchar[], :emails::varchar[], :passwords::varchar[], :usernames::varchar[]) " +
+            "ON CONFLICT DO NOTHING RETURNING id")
+    Flux<String> createAll(String[] ids, String[] emails, String[] passwords, String[] usernames);
+
     @Query("UPDATE users SET username = :username, password = :password WHERE id = :id")
     Mono<User> update(String id, String username, String password);
 
+    // Only replaces the hash if it hasn't been changed since it was read
+    @Query("UPDATE users SET password = :password WHERE username = :username AND password = :previous")
+    Mono<Void> updatePassword(String username, String password, String previous);
+
+    // Every role change bumps roles_version, refresh tokens holding an older version reload the roles.
+    // Run in the same transaction as the change
+
+    @Modifying
+    @Query("UPDATE users SET roles_version = roles_version + 1 WHERE id = :userId")
+    Mono<Integer> bumpRolesVersion(String userId);
+
+    @Modifying
+    @Query("UPDATE users SET roles_version = roles_version + 1 WHERE id = ANY(:userIds)")
+    Mono<Integer> bumpRolesVersions(String[] userIds);
+
+    @Modifying
+    @Query("UPDATE users SET roles_version = roles_version + 1 " +
+            "WHERE id IN (SELECT users_id FROM users_roles WHERE roles_id = :roleId)")
+    Mono<Integer> bumpRolesVersionsOfRole(int roleId);
+
 }
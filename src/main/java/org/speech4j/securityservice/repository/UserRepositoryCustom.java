@@ -0,0 +1,33 @@
+package org.speech4j.securityservice.repository;
+
+import org.speech4j.securityservice.domain.User;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Queries that load a user together with its roles in one round trip.
+ * Implemented by {@link UserRepositoryCustomImpl}.
+ */
+public interface UserRepositoryCustom {
+
+    Mono<User> findWithRolesByUsername(String username);
+
+    /**
+     * Loads the users with the given ids in one query, in no particular
+     * order. Unknown ids are skipped.
+     */
+    Flux<User> findAllByIds(String[] ids, boolean withRoles);
+
+    /**
+     * Streams all users ordered by id from a single server-side cursor,
+     * fetching {@code fetchSize} rows at a time as downstream demand allows.
+     */
+    Flux<User> streamAll(boolean withRoles, int fetchSize);
+
+    /**
+     * Streams the users holding the role with ids greater than {@code after},
+     * ordered by id, the same way as {@link #streamAll(boolean, int)}.
+     */
+    Flux<User> streamByRoleId(int roleId, String after, int fetchSize);
+
+}
@@ -0,0 +1,103 @@
+package org.speech4j.securityservice.repository;
+
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.speech4j.securityservice.domain.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    private DatabaseClient client;
+    private UserWithRolesRowMapper mapper = new UserWithRolesRowMapper();
+
+    @Autowired
+    public UserRepositoryCustomImpl(DatabaseClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public Mono<User> findWithRolesByUsername(String username) {
+        return client.execute(SqlQueries.FIND_WITH_ROLES_BY_USERNAME)
+                .bind("username", username)
+                .map(mapper)
+                .one();
+    }
+
+    @Override
+    public Flux<User> findAllByIds(String[] ids, boolean withRoles) {
+        return client.execute(withRoles ? SqlQueries.FIND_WITH_ROLES_BY_IDS : SqlQueries.FIND_BY_IDS)
+                .bind("ids", ids)
+                .map(withRoles ? mapper : this::mapUser)
+                .all();
+    }
+
+    @Override
+    public Flux<User> streamAll(boolean withRoles, int fetchSize) {
+        // The bound parameter makes the driver use the extended protocol, which honours the fetch size
+        return client.execute(withRoles ? SqlQueries.STREAM_WITH_ROLES : SqlQueries.STREAM)
+                .bind("after", "")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(withRoles ? mapper : this::mapUser)
+                .all();
+    }
+
+    @Override
+    public Flux<User> streamByRoleId(int roleId, String after, int fetchSize) {
+        return client.execute(SqlQueries.STREAM_BY_ROLE_ID)
+                .bind("roleId", roleId)
+                .bind("after", after)
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(this::mapUser)
+                .all();
+    }
+
+    private User mapUser(Row row, RowMetadata metadata) {
+        return new User(
+                row.get("id", String.class),
+                row.get("username", String.class),
+                row.get("email", String.class),
+                row.get("password", String.class),
+                null,
+                0
+        );
+    }
+
+    static class SqlQueries {
+        // Role ids are aggregated as text so the mapper works for both varchar and integer keys
+        static final String SELECT_WITH_ROLES = "SELECT users.id, users.username, users.email, users.password, users.roles_version, " +
+                "array_remove(array_agg(roles.id::text), NULL) AS role_ids, " +
+                "array_remove(array_agg(roles.name::text), NULL) AS role_names " +
+                "FROM users " +
+                "LEFT JOIN users_roles ON users_roles.users_id = users.id " +
+                "LEFT JOIN roles ON roles.id = users_roles.roles_id ";
+
+        static final String FIND_WITH_ROLES_BY_USERNAME = SELECT_WITH_ROLES +
+                "WHERE users.username = :username " +
+                "GROUP BY users.id";
+
+        // The whole id list is one array parameter, so the statement is the same for any batch size
+        static final String FIND_BY_IDS = "SELECT id, username, email, password FROM users " +
+                "WHERE id = ANY(:ids)";
+
+        static final String FIND_WITH_ROLES_BY_IDS = SELECT_WITH_ROLES +
+                "WHERE users.id = ANY(:ids) " +
+                "GROUP BY users.id";
+
+        static final String STREAM = "SELECT id, username, email, password FROM users " +
+                "WHERE id > :after " +
+                "ORDER BY id";
+
+        static final String STREAM_WITH_ROLES = SELECT_WITH_ROLES +
+                "WHERE users.id > :after " +
+                "GROUP BY users.id " +
+                "ORDER BY users.id";
+
+        static final String STREAM_BY_ROLE_ID = "SELECT users.id, users.username, users.email, users.password " +
+                "FROM users_roles JOIN users ON users.id = users_roles.users_id " +
+                "WHERE users_roles.roles_id = :roleId AND users_roles.users_id > :after " +
+                "ORDER BY users_roles.users_id";
+    }
+}
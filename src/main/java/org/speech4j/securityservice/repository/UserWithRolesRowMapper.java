@@ -0,0 +1,39 @@
+package org.speech4j.securityservice.repository;
+
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.speech4j.securityservice.domain.Role;
+import org.speech4j.securityservice.domain.User;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Maps a users row with aggregated {@code role_ids} and {@code role_names}
+ * arrays to a {@link User} with its roles and {@code roles_version}
+ * populated.
+ */
+public class UserWithRolesRowMapper implements BiFunction<Row, RowMetadata, User> {
+
+    @Override
+    public User apply(Row row, RowMetadata metadata) {
+        String[] roleIds = row.get("role_ids", String[].class);
+        String[] roleNames = row.get("role_names", String[].class);
+
+        Set<Role> roles = new HashSet<>();
+        if (roleIds != null && roleNames != null) {
+            for (int i = 0; i < roleIds.length; i++) {
+                roles.add(new Role(Integer.parseInt(roleIds[i]), roleNames[i]));
+            }
+        }
+        return new User(
+                row.get("id", String.class),
+                row.get("username", String.class),
+                row.get("email", String.class),
+                row.get("password", String.class),
+                roles,
+                row.get("roles_version", Long.class)
+        );
+    }
+}
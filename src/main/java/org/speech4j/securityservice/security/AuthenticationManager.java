@@ -3,19 +3,14 @@ package org.speech4j.securityservice.security;
 import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.speech4j.securityservice.util.JWTUtil;
+import org.speech4j.securityservice.util.TokenValidationResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-
 @Slf4j
 @Component
 public class AuthenticationManager implements ReactiveAuthenticationManager {
@@ -23,23 +18,42 @@ public class AuthenticationManager implements ReactiveAuthenticationManager {
     @Autowired
     private JWTUtil jwtUtil;
 
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private RevocationList revocationList;
+
+    // The claims are kept as details, so cached tokens can still be checked for revocation
+
     @Override
-    @SuppressWarnings("unchecked")
     public Mono<Authentication> authenticate(Authentication authentication) {
         String authToken = authentication.getCredentials().toString();
-        try {
-            if (!jwtUtil.validateToken(authToken)) {
-                return Mono.empty();
-            }
-            Claims claims = jwtUtil.getAllClaimsFromToken(authToken);
-            List<Map<String, String>> rolesMap = claims.get("role", List.class);
-            List<GrantedAuthority> authorities = new ArrayList<>();
-            for (var rolemap: rolesMap) {
-                authorities.add(new SimpleGrantedAuthority(rolemap.get("authority")));
-            }
-            return Mono.just(new UsernamePasswordAuthenticationToken(claims.getSubject(), null, authorities));
-        } catch (Exception e) {
+        Authentication cached = tokenCache.get(authToken);
+        if (cached != null) {
+            return isRevoked((Claims) cached.getDetails()) ? Mono.empty() : Mono.just(cached);
+        }
+        TokenValidationResult result = jwtUtil.validate(authToken);
+        if (!result.isValid()) {
+            LOGGER.debug("Token rejected: {}", result.getStatus());
+            return Mono.empty();
+        }
+        Claims claims = result.getClaims();
+        if (isRevoked(claims)) {
             return Mono.empty();
         }
+        UsernamePasswordAuthenticationToken auth =
+                new UsernamePasswordAuthenticationToken(claims.getSubject(), null, result.getAuthorities());
+        auth.setDetails(claims);
+        tokenCache.put(authToken, auth, claims.getExpiration());
+        return Mono.just(auth);
+    }
+
+    private boolean isRevoked(Claims claims) {
+        if (revocationList.isRevoked(claims.getId())) {
+            LOGGER.debug("Token rejected: REVOKED");
+            return true;
+        }
+        return false;
     }
 }
@@ -0,0 +1,139 @@
+package org.speech4j.securityservice.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the address of the client a request came from, for the login rate
+ * limiter. {@code X-Forwarded-For} is only read when the connection comes
+ * from one of {@code login.rate-limit.trusted-proxies}. It is walked from the
+ * right and the first hop that is not a trusted proxy is the client, so
+ * entries a client writes into the header itself are never used. Without
+ * trusted proxies the peer address is the client.
+ */
+@Slf4j
+@Component
+public class ClientAddressResolver {
+
+    private static final String FORWARDED_FOR = "X-Forwarded-For";
+    private static final String UNKNOWN = "unknown";
+    // Only literal addresses are matched, a host name in the header must not cause a DNS lookup
+    private static final Pattern LITERAL = Pattern.compile("[0-9a-fA-F.:]+");
+
+    private final List<Subnet> trustedProxies = new ArrayList<>();
+
+    @Autowired
+    public ClientAddressResolver(@Value("${login.rate-limit.trusted-proxies:}") String[] trustedProxies) {
+        for (String proxy : trustedProxies) {
+            if (!proxy.trim().isEmpty()) {
+                this.trustedProxies.add(Subnet.parse(proxy.trim()));
+            }
+        }
+        LOGGER.debug("Client address resolver created [trusted proxies: {}]", this.trustedProxies.size());
+    }
+
+    public String resolve(ServerRequest request) {
+        String peer = request.remoteAddress()
+                .map(InetSocketAddress::getAddress)
+                .map(InetAddress::getHostAddress)
+                .orElse(UNKNOWN);
+        return resolve(peer, request.headers().header(FORWARDED_FOR));
+    }
+
+    String resolve(String peer, List<String> forwardedFor) {
+        if (!isTrusted(peer)) {
+            return peer;
+        }
+        String client = peer;
+        for (int i = forwardedFor.size() - 1; i >= 0; i--) {
+            String[] hops = forwardedFor.get(i).split(",");
+            for (int j = hops.length - 1; j >= 0; j--) {
+                String hop = hops[j].trim();
+                if (hop.isEmpty()) {
+                    continue;
+                }
+                if (!isTrusted(hop)) {
+                    return hop;
+                }
+                client = hop;
+            }
+        }
+        return client;
+    }
+
+    private boolean isTrusted(String address) {
+        if (trustedProxies.isEmpty() || !LITERAL.matcher(address).matches()) {
+            return false;
+        }
+        byte[] bytes;
+        try {
+            bytes = InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+        for (Subnet proxy : trustedProxies) {
+            if (proxy.contains(bytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Subnet {
+        private final byte[] network;
+        private final int prefix;
+
+        private Subnet(byte[] network, int prefix) {
+            this.network = network;
+            this.prefix = prefix;
+        }
+
+        // An address without a prefix length is a single host
+
+        private static Subnet parse(String cidr) {
+            int slash = cidr.indexOf('/');
+            String address = slash < 0 ? cidr : cidr.substring(0, slash);
+            if (!LITERAL.matcher(address).matches()) {
+                throw new IllegalStateException("Trusted proxy " + cidr + " is not an IP address or CIDR range");
+            }
+            try {
+                byte[] network = InetAddress.getByName(address).getAddress();
+                int prefix = slash < 0 ? network.length * 8 : Integer.parseInt(cidr.substring(slash + 1));
+                if (prefix < 0 || prefix > network.length * 8) {
+                    throw new IllegalStateException("Trusted proxy " + cidr + " has an invalid prefix length");
+                }
+                return new Subnet(network, prefix);
+            } catch (UnknownHostException | NumberFormatException e) {
+                throw new IllegalStateException("Trusted proxy " + cidr + " is not an IP address or CIDR range", e);
+            }
+        }
+
+        private boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+            int full = prefix / 8;
+            for (int i = 0; i < full; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+            int rest = prefix % 8;
+            if (rest == 0) {
+                return true;
+            }
+            int mask = (0xFF00 >> rest) & 0xFF;
+            return (address[full] & mask) == (network[full] & mask);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.speech4j.securityservice.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Throttles login attempts per username and per client address before any
+ * lookup or password check runs. Each key hashes into a fixed table of
+ * stripes, updated with CAS only, so memory stays bounded no matter how many
+ * distinct keys an attacker sends. Keys that share a stripe share its limit.
+ * The hash is seeded per instance so collisions can't be picked on purpose.
+ * <p>
+ * Every stripe has a token bucket, kept as a GCRA theoretical arrival time,
+ * and a consecutive failure count. Reaching {@code lockout-threshold}
+ * failures locks the stripe, and the lock doubles with every further failure
+ * up to {@code lockout-max}. A streak is forgotten once it has been quiet for
+ * {@code lockout-max}.
+ */
+@Slf4j
+@Component
+public class LoginRateLimiter {
+
+    private final Policy username;
+    private final Policy address;
+
+    @Autowired
+    public LoginRateLimiter(@Value("${login.rate-limit.stripes:65536}") int stripes,
+                            @Value("${login.rate-limit.username.burst:10}") int usernameBurst,
+                            @Value("${login.rate-limit.username.refill:6s}") Duration usernameRefill,
+                            @Value("${login.rate-limit.username.lockout-threshold:5}") int usernameThreshold,
+                            @Value("${login.rate-limit.address.burst:50}") int addressBurst,
+                            @Value("${login.rate-limit.address.refill:1s}") Duration addressRefill,
+                            @Value("${login.rate-limit.address.lockout-threshold:30}") int addressThreshold,
+                            @Value("${login.rate-limit.lockout-base:1s}") Duration lockoutBase,
+                            @Value("${login.rate-limit.lockout-max:15m}") Duration lockoutMax,
+                            MeterRegistry registry) {
+        this.username = new Policy("username", stripes, usernameBurst, usernameRefill, usernameThreshold,
+                lockoutBase, lockoutMax, registry);
+        this.address = new Policy("address", stripes, addressBurst, addressRefill, addressThreshold,
+                lockoutBase, lockoutMax, registry);
+        LOGGER.debug("Login rate limiter created [stripes: {}]", Integer.highestOneBit(Math.max(stripes, 1)));
+    }
+
+    /**
+     * Takes a token for the client address.
+     * Returns 0 when the attempt may go on, otherwise the milliseconds to wait.
+     */
+    public long acquireAddress(String clientAddress) {
+        return address.acquire(clientAddress);
+    }
+
+    /**
+     * Takes a token for the username.
+     * Returns 0 when the attempt may go on, otherwise the milliseconds to wait.
+     */
+    public long acquireUsername(String name) {
+        return username.acquire(name);
+    }
+
+    public void onFailure(String name, String clientAddress) {
+        username.fail(name);
+        address.fail(clientAddress);
+    }
+
+    // Only the username is reset, a success must not clear an address that keeps guessing other accounts
+
+    public void onSuccess(String name) {
+        username.reset(name);
+    }
+
+    private static final class Policy {
+        // Lockout state packs the failure count above the lock deadline, in millis since creation
+        private static final int DEADLINE_BITS = 48;
+        private static final long DEADLINE_MASK = (1L << DEADLINE_BITS) - 1;
+        private static final long MAX_FAILURES = 0xFFFF;
+
+        private final String scope;
+        private final int mask;
+        private final int seed = ThreadLocalRandom.current().nextInt();
+        private final long origin = System.nanoTime();
+
+        private final AtomicLongArray arrivals;
+        private final AtomicLongArray lockouts;
+        private final long emissionNanos;
+        private final long toleranceNanos;
+        private final int threshold;
+        private final long lockoutBaseMillis;
+        private final long lockoutMaxMillis;
+
+        private final Counter rateLimited;
+        private final Counter lockedOut;
+
+        private Policy(String scope, int stripes, int burst, Duration refill, int threshold,
+                       Duration lockoutBase, Duration lockoutMax, MeterRegistry registry) {
+            int size = Integer.highestOneBit(Math.max(stripes, 1));
+            this.scope = scope;
+            this.mask = size - 1;
+            this.arrivals = new AtomicLongArray(size);
+            this.lockouts = new AtomicLongArray(size);
+            this.emissionNanos = refill.toNanos();
+            this.toleranceNanos = emissionNanos * Math.max(burst - 1, 0);
+            this.threshold = threshold;
+            this.lockoutBaseMillis = lockoutBase.toMillis();
+            this.lockoutMaxMillis = lockoutMax.toMillis();
+            this.rateLimited = rejections(scope, "rate", registry);
+            this.lockedOut = rejections(scope, "lockout", registry);
+        }
+
+        private long acquire(String key) {
+            int stripe = stripe(key);
+            long nowMillis = millis();
+            long lockout = lockouts.get(stripe);
+            long remaining = (lockout & DEADLINE_MASK) - nowMillis;
+            if ((lockout >>> DEADLINE_BITS) >= threshold && remaining > 0) {
+                lockedOut.increment();
+                return remaining;
+            }
+
+            long now = System.nanoTime() - origin;
+            while (true) {
+                long arrival = arrivals.get(stripe);
+                long next = Math.max(arrival, now) + emissionNanos;
+                long wait = next - now - emissionNanos - toleranceNanos;
+                if (wait > 0) {
+                    rateLimited.increment();
+                    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+                }
+                if (arrivals.compareAndSet(stripe, arrival, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private void fail(String key) {
+            int stripe = stripe(key);
+            long nowMillis = millis();
+            while (true) {
+                long lockout = lockouts.get(stripe);
+                // A streak that went quiet for longer than the longest lock starts over
+                long previous = nowMillis - (lockout & DEADLINE_MASK) > lockoutMaxMillis ? 0 : lockout >>> DEADLINE_BITS;
+                long failures = Math.min(previous + 1, MAX_FAILURES);
+                long deadline = nowMillis;
+                if (failures >= threshold) {
+                    long exponent = Math.min(failures - threshold, 30);
+                    deadline += Math.min(lockoutBaseMillis << exponent, lockoutMaxMillis);
+                }
+                long updated = (failures << DEADLINE_BITS) | (deadline & DEADLINE_MASK);
+                if (lockouts.compareAndSet(stripe, lockout, updated)) {
+                    if (failures == threshold) {
+                        LOGGER.warn("Login {} stripe {} locked after {} failures", scope, stripe, failures);
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void reset(String key) {
+            lockouts.set(stripe(key), 0);
+        }
+
+        private int stripe(String key) {
+            int hash = (key == null ? 0 : key.hashCode()) ^ seed;
+            hash *= 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        private long millis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+        }
+
+        private static Counter rejections(String scope, String reason, MeterRegistry registry) {
+            return Counter.builder("login.rejected")
+                    .description("Login attempts refused before any lookup or password check")
+                    .tag("scope", scope)
+                    .tag("reason", reason)
+                    .register(registry);
+        }
+    }
+}
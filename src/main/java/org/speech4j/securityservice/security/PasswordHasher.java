@@ -0,0 +1,156 @@
+package org.speech4j.securityservice.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.speech4j.securityservice.exception.ServiceUnavailableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password hashing off the event loop on a fixed-size pool with a
+ * bounded queue. When the queue is full the call fails fast with
+ * {@link ServiceUnavailableException} instead of queueing without limit.
+ * Bulk imports hash on a separate small pool, so they never take queue
+ * slots from logins.
+ */
+@Slf4j
+@Component
+public class PasswordHasher {
+
+    private final PasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final Scheduler importScheduler;
+
+    private final Timer waitTimer;
+    private final Timer importWaitTimer;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public PasswordHasher(PasswordEncoder encoder,
+                          @Value("${security.password.hashing.threads:0}") int threads,
+                          @Value("${security.password.hashing.queue-capacity:256}") int queueCapacity,
+                          @Value("${security.password.hashing.import-threads:1}") int importThreads,
+                          MeterRegistry registry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.encoder = encoder;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new HasherThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.scheduler = Schedulers.fromExecutorService(executor, "password-hashing");
+        // Unbounded, the import limits how many hashes it has in flight
+        ThreadPoolExecutor importExecutor = new ThreadPoolExecutor(importThreads, importThreads,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new HasherThreadFactory("password-hashing-import-"));
+        this.importScheduler = Schedulers.fromExecutorService(importExecutor, "password-hashing-import");
+
+        Gauge.builder("password.hashing.queue", executor, e -> e.getQueue().size())
+                .description("Password hashing tasks waiting for a worker")
+                .register(registry);
+        this.waitTimer = Timer.builder("password.hashing.wait")
+                .description("Time a password hashing task spent in the queue")
+                .register(registry);
+        this.importWaitTimer = Timer.builder("password.hashing.import.wait")
+                .description("Time an import hashing task spent in the queue")
+                .register(registry);
+        this.encodeTimer = Timer.builder("password.hashing.time")
+                .tag("operation", "encode")
+                .register(registry);
+        this.matchesTimer = Timer.builder("password.hashing.time")
+                .tag("operation", "matches")
+                .register(registry);
+        this.rejectedCounter = Counter.builder("password.hashing.rejected")
+                .description("Password hashing tasks rejected because the queue was full")
+                .register(registry);
+        LOGGER.debug("Password hashing pool created [threads: {}, queueCapacity: {}, importThreads: {}]",
+                poolSize, queueCapacity, importThreads);
+    }
+
+    public Mono<String> encode(CharSequence rawPassword) {
+        return submit(scheduler, waitTimer, encodeTimer, () -> encoder.encode(rawPassword));
+    }
+
+    /**
+     * Hashes on the import pool, which never rejects. Callers bound how many
+     * hashes they have in flight.
+     */
+    public Mono<String> encodeForImport(CharSequence rawPassword) {
+        return submit(importScheduler, importWaitTimer, encodeTimer, () -> encoder.encode(rawPassword));
+    }
+
+    public Mono<Boolean> matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(scheduler, waitTimer, matchesTimer, () -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Cheap check whether the stored hash was produced by an older algorithm
+     * or a lower cost than the current policy.
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return encoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> Mono<T> submit(Scheduler pool, Timer waitTimer, Timer hashTimer, Callable<T> task) {
+        return Mono.defer(() -> {
+            long queuedAt = System.nanoTime();
+            return Mono.fromCallable(() -> {
+                long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.call();
+                } finally {
+                    hashTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            }).subscribeOn(pool);
+        }).onErrorMap(RejectedExecutionException.class, e -> {
+            rejectedCounter.increment();
+            LOGGER.warn("Password hashing queue is full, rejecting request");
+            return new ServiceUnavailableException("Server is busy, try again later");
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+        importScheduler.dispose();
+    }
+
+    private static final class HasherThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private HasherThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.speech4j.securityservice.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory copy of the revoked token ids. A Bloom filter answers "not
+ * revoked" for almost every token without touching the exact set, which is
+ * only consulted on a filter hit. Reads never lock; writes are rare and
+ * serialized, so the filter always covers every entry in the set.
+ */
+@Slf4j
+@Component
+public class RevocationList {
+
+    private final int expectedSize;
+    private final double falsePositiveRate;
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter;
+
+    private final Counter falsePositives;
+
+    @Autowired
+    public RevocationList(@Value("${jwt.revocation.expected-size:100000}") int expectedSize,
+                          @Value("${jwt.revocation.false-positive-rate:0.01}") double falsePositiveRate,
+                          MeterRegistry registry) {
+        this.expectedSize = expectedSize;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedSize, falsePositiveRate);
+        Gauge.builder("jwt.revocation.size", revoked, Map::size)
+                .description("Revoked tokens that have not expired yet")
+                .register(registry);
+        this.falsePositives = Counter.builder("jwt.revocation.false-positives")
+                .description("Bloom filter hits for tokens that were not revoked")
+                .register(registry);
+    }
+
+    public boolean isRevoked(String jti) {
+        if (jti == null || !filter.mightContain(jti)) {
+            return false;
+        }
+        if (revoked.containsKey(jti)) {
+            return true;
+        }
+        falsePositives.increment();
+        return false;
+    }
+
+    public synchronized void add(String jti, long expiresAtMillis) {
+        if (revoked.putIfAbsent(jti, expiresAtMillis) == null) {
+            filter.put(jti);
+        }
+    }
+
+    // Bloom filters can't forget, so the purge builds a new one from what is left
+
+    public synchronized int purgeExpired(long nowMillis) {
+        int before = revoked.size();
+        revoked.values().removeIf(expiresAt -> expiresAt <= nowMillis);
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedSize, revoked.size() * 2), falsePositiveRate);
+        revoked.keySet().forEach(rebuilt::put);
+        this.filter = rebuilt;
+        int purged = before - revoked.size();
+        LOGGER.debug("Revocation list purged [removed: {}, remaining: {}]", purged, revoked.size());
+        return purged;
+    }
+
+    private static final class BloomFilter {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+
+        private BloomFilter(int expectedSize, double falsePositiveRate) {
+            long bits = (long) Math.ceil(-expectedSize * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+            this.bitCount = words.length() * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedSize * Math.log(2)));
+        }
+
+        // Double hashing, the k indexes come from two halves of one 64-bit hash
+
+        private void put(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                long index = Math.floorMod(h1 + (long) i * h2, bitCount);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long current;
+                do {
+                    current = words.get(word);
+                } while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask));
+            }
+        }
+
+        private boolean mightContain(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                long index = Math.floorMod(h1 + (long) i * h2, bitCount);
+                if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a over the chars, then the MurmurHash3 finalizer to spread the bits
+
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.speech4j.securityservice.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds already verified tokens so a repeated bearer token skips
+ * signature verification and claims parsing. Entries are keyed by the
+ * SHA-256 digest of the token and live until the token's expiration,
+ * capped by {@code jwt.cache.max-ttl}.
+ */
+@Slf4j
+@Component
+public class TokenCache {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final Cache<String, Entry> cache;
+
+    @Autowired
+    public TokenCache(@Value("${jwt.cache.max-size:10000}") long maxSize,
+                      @Value("${jwt.cache.max-ttl:300}") long maxTtlSeconds,
+                      MeterRegistry registry) {
+        long maxTtlNanos = TimeUnit.SECONDS.toNanos(maxTtlSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry(maxTtlNanos))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "jwt.tokens");
+        LOGGER.debug("Token cache created [maxSize: {}, maxTtl: {}s]", maxSize, maxTtlSeconds);
+    }
+
+    public Authentication get(String token) {
+        Entry entry = cache.getIfPresent(digest(token));
+        if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        return entry.authentication;
+    }
+
+    public void put(String token, Authentication authentication, Date expiration) {
+        if (expiration == null) {
+            return;
+        }
+        cache.put(digest(token), new Entry(authentication, expiration.getTime()));
+    }
+
+    public void evict(String token) {
+        cache.invalidate(digest(token));
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    private static String digest(String token) {
+        byte[] hash = DIGEST.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    private static final class Entry {
+        private final Authentication authentication;
+        private final long expiresAt;
+
+        private Entry(Authentication authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Expires each entry together with its token, but never later than max-ttl
+
+    private static final class TokenExpiry implements Expiry<String, Entry> {
+        private final long maxTtlNanos;
+
+        private TokenExpiry(long maxTtlNanos) {
+            this.maxTtlNanos = maxTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Entry value, long currentTime) {
+            long untilExpiration = TimeUnit.MILLISECONDS.toNanos(value.expiresAt - System.currentTimeMillis());
+            return Math.max(0, Math.min(untilExpiration, maxTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
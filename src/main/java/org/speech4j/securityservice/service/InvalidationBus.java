@@ -0,0 +1,152 @@
+package org.speech4j.securityservice.service;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.R2dbcBadGrammarException;
+import io.r2dbc.spi.R2dbcPermissionDeniedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts cache invalidations to every instance through Postgres
+ * NOTIFY/LISTEN. Messages are {@code topic|key}. A key of {@link #ALL} asks
+ * listeners to drop everything they hold for the topic. That key is also sent
+ * locally after a reconnect, because notifications sent while disconnected
+ * are lost.
+ */
+@Slf4j
+@Component
+public class InvalidationBus {
+    public static final String ALL = "*";
+
+    private static final String CHANNEL = "security_invalidation";
+    private static final char SEPARATOR = '|';
+
+    private final DatabaseClient client;
+    private final ConnectionFactory listenerFactory;
+    private final Duration reconnectDelay;
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    private final AtomicBoolean connectedBefore = new AtomicBoolean();
+    private Disposable subscription;
+
+    // LISTEN needs a connection of its own for as long as the instance runs, so it bypasses the pool
+
+    @Autowired
+    public InvalidationBus(DatabaseClient client, ConnectionPool pool,
+                           @Value("${invalidation.reconnect-delay:5s}") Duration reconnectDelay) {
+        this.client = client;
+        this.listenerFactory = pool.unwrap();
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    public void subscribe(String topic, Consumer<String> listener) {
+        listeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Best effort: a failed notify is logged and swallowed, peers then catch
+     * up through their cache expiry.
+     */
+    public Mono<Void> publish(String topic, String key) {
+        return client.execute("SELECT pg_notify(:channel, :payload)")
+                .bind("channel", CHANNEL)
+                .bind("payload", topic + SEPARATOR + key)
+                // pg_notify returns void, which has no codec, so the row is discarded unread
+                .then()
+                .onErrorResume(e -> {
+                    LOGGER.warn("Failed to publish invalidation {}{}{}: {}", topic, SEPARATOR, key, e.getLocalizedMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // The backoff starts over once a connection delivers, a bad LISTEN or rejected credentials stop the listener
+
+    @PostConstruct
+    public void start() {
+        subscription = Mono.from(listenerFactory.create())
+                .cast(PostgresqlConnection.class)
+                .flatMapMany(this::listen)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, reconnectDelay)
+                        .maxBackoff(reconnectDelay.multipliedBy(12))
+                        .transientErrors(true)
+                        .filter(InvalidationBus::isRecoverable)
+                        .doBeforeRetry(signal -> LOGGER.warn("Invalidation listener disconnected, reconnecting: {}",
+                                signal.failure().getLocalizedMessage())))
+                .subscribe(this::dispatch, e -> LOGGER.error(
+                        "Invalidation listener stopped, peers' invalidations are only picked up on cache expiry", e));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private Flux<Notification> listen(PostgresqlConnection connection) {
+        return connection.createStatement("LISTEN " + CHANNEL)
+                .execute()
+                .flatMap(PostgresqlResult::getRowsUpdated)
+                .then(Mono.fromRunnable(this::onConnected))
+                .thenMany(connection.getNotifications())
+                // The stream completes when the connection drops, retrying reconnects
+                .concatWith(Flux.error(new IllegalStateException("Notification connection closed")))
+                .doFinally(signal -> Mono.from(connection.close()).subscribe());
+    }
+
+    private static boolean isRecoverable(Throwable e) {
+        return !(e instanceof R2dbcBadGrammarException) && !(e instanceof R2dbcPermissionDeniedException);
+    }
+
+    private void onConnected() {
+        LOGGER.debug("Listening for invalidations on channel {}", CHANNEL);
+        if (connectedBefore.getAndSet(true)) {
+            listeners.keySet().forEach(topic -> deliver(topic, ALL));
+        }
+    }
+
+    private void dispatch(Notification notification) {
+        String payload = notification.getParameter();
+        LOGGER.debug("Received invalidation {} from backend {}", payload, notification.getProcessId());
+        int separator = payload == null ? -1 : payload.indexOf(SEPARATOR);
+        if (separator < 0) {
+            LOGGER.warn("Ignoring malformed invalidation {}", payload);
+            return;
+        }
+        deliver(payload.substring(0, separator), payload.substring(separator + 1));
+    }
+
+    private void deliver(String topic, String key) {
+        List<Consumer<String>> topicListeners = listeners.get(topic);
+        if (topicListeners == null) {
+            return;
+        }
+        for (Consumer<String> listener : topicListeners) {
+            try {
+                listener.accept(key);
+            } catch (RuntimeException e) {
+                LOGGER.error("Invalidation listener for {} failed", topic, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.speech4j.securityservice.service;
+
+import org.speech4j.securityservice.dto.AuthResponse;
+import org.springframework.security.core.userdetails.UserDetails;
+import reactor.core.publisher.Mono;
+
+public interface RefreshTokenService {
+
+    Mono<String> issue(UserDetails user);
+
+    Mono<AuthResponse> refresh(String refreshToken);
+
+    Mono<Void> revoke(String refreshToken);
+
+}
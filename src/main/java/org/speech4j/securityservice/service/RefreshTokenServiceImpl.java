@@ -0,0 +1,159 @@
+package org.speech4j.securityservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.speech4j.securityservice.domain.RefreshToken;
+import org.speech4j.securityservice.domain.User;
+import org.speech4j.securityservice.dto.AuthResponse;
+import org.speech4j.securityservice.repository.RefreshTokenRepository;
+import org.speech4j.securityservice.util.JWTUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Opaque, single-use refresh tokens of the form {@code family.secret}. A
+ * family is started at login and only the SHA-256 digest of its newest token
+ * is stored. Each refresh replaces the presented token with a new one of the
+ * same family and absolute expiry, in one transaction, so a failed refresh
+ * leaves the presented token valid. Presenting a token the family has already
+ * moved past means it was copied, and the whole family is revoked. The roles
+ * seen at login are kept with the family along with the user's roles_version,
+ * so a refresh re-reads the user only after its roles have changed.
+ */
+@Service
+@Slf4j
+public class RefreshTokenServiceImpl implements RefreshTokenService {
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final int TOKEN_BYTES = 32;
+    private static final int FAMILY_BYTES = 16;
+    private static final char SEPARATOR = '.';
+    // Never matches a stored version, the first refresh reloads the roles
+    private static final long UNKNOWN_ROLES_VERSION = -1;
+
+    private RefreshTokenRepository repository;
+    private UserService userService;
+    private JWTUtil jwtUtil;
+    private TransactionalOperator transactionalOperator;
+    private Duration lifetime;
+    private SecureRandom random = new SecureRandom();
+
+    @Autowired
+    public RefreshTokenServiceImpl(RefreshTokenRepository repository, UserService userService, JWTUtil jwtUtil,
+                                   TransactionalOperator transactionalOperator,
+                                   @Value("${jwt.refresh.expiration:30d}") Duration lifetime) {
+        this.repository = repository;
+        this.userService = userService;
+        this.jwtUtil = jwtUtil;
+        this.transactionalOperator = transactionalOperator;
+        this.lifetime = lifetime;
+    }
+
+    // Expired tokens of the user are cleared here, so the table needs no separate sweep
+
+    @Override
+    public Mono<String> issue(UserDetails user) {
+        long rolesVersion = user instanceof User ? ((User) user).getRolesVersion() : UNKNOWN_ROLES_VERSION;
+        String family = randomToken(FAMILY_BYTES);
+        String secret = randomToken(TOKEN_BYTES);
+        return repository.deleteExpired(user.getUsername())
+                .then(repository.create(digest(secret), family, user.getUsername(), toNames(user.getAuthorities()),
+                        rolesVersion, Instant.now().plus(lifetime)))
+                .thenReturn(family + SEPARATOR + secret);
+    }
+
+    @Override
+    public Mono<AuthResponse> refresh(String refreshToken) {
+        String family = familyOf(refreshToken);
+        Mono<AuthResponse> rotation = repository.lockFamily(family).flatMap(current -> {
+            if (!matches(current, refreshToken)) {
+                LOGGER.warn("Reused refresh token of user {}, revoking its family", current.getUsername());
+                return repository.deleteFamily(family).then(Mono.empty());
+            }
+            return currentRoles(current).flatMap(roles -> {
+                String token = jwtUtil.generateToken(current.getUsername(), toAuthorities(roles));
+                String secret = randomToken(TOKEN_BYTES);
+                return repository.rotate(family, digest(secret), roles, current.getRolesVersion())
+                        .thenReturn(new AuthResponse(token, family + SEPARATOR + secret));
+            });
+        });
+        return transactionalOperator.transactional(rotation)
+                .doOnNext(response -> LOGGER.debug("Refresh token rotated"));
+    }
+
+    @Override
+    public Mono<Void> revoke(String refreshToken) {
+        return repository.deleteToken(familyOf(refreshToken), digest(secretOf(refreshToken))).then();
+    }
+
+    // Roles read after the family is locked are at least as new as the version it returned
+
+    private Mono<String[]> currentRoles(RefreshToken consumed) {
+        if (consumed.getRoles() != null) {
+            return Mono.just(consumed.getRoles());
+        }
+        LOGGER.debug("Roles of user {} changed since login, reloading", consumed.getUsername());
+        return userService.findByUsername(consumed.getUsername())
+                .map(user -> toNames(user.getAuthorities()));
+    }
+
+    private String randomToken(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return BASE64URL.encodeToString(bytes);
+    }
+
+    // Tokens issued before families existed have no separator, their family is keyed by their digest
+
+    private static String familyOf(String refreshToken) {
+        int separator = refreshToken.indexOf(SEPARATOR);
+        return separator < 0 ? digest(refreshToken) : refreshToken.substring(0, separator);
+    }
+
+    private static String secretOf(String refreshToken) {
+        return refreshToken.substring(refreshToken.indexOf(SEPARATOR) + 1);
+    }
+
+    private static boolean matches(RefreshToken current, String refreshToken) {
+        return MessageDigest.isEqual(current.getTokenHash().getBytes(StandardCharsets.US_ASCII),
+                digest(secretOf(refreshToken)).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String[] toNames(Collection<? extends GrantedAuthority> authorities) {
+        return authorities.stream().map(GrantedAuthority::getAuthority).toArray(String[]::new);
+    }
+
+    private static List<GrantedAuthority> toAuthorities(String[] roles) {
+        List<GrantedAuthority> authorities = new ArrayList<>(roles.length);
+        for (String role : roles) {
+            authorities.add(new SimpleGrantedAuthority(role));
+        }
+        return authorities;
+    }
+
+    // Refresh tokens carry 256 random bits, a fast hash is enough to protect them at rest
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return BASE64URL.encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.speech4j.securityservice.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+
+public interface RevocationService {
+
+    Mono<Void> revoke(String jti, Date expiresAt);
+
+}
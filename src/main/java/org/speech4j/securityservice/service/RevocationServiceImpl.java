@@ -0,0 +1,125 @@
+package org.speech4j.securityservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.speech4j.securityservice.domain.RevokedToken;
+import org.speech4j.securityservice.repository.RevokedTokenRepository;
+import org.speech4j.securityservice.security.RevocationList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Persists revoked token ids and keeps the in-memory {@link RevocationList}
+ * in line with the table. Revocations from other instances arrive through the
+ * {@link InvalidationBus}, polling every {@code jwt.revocation.refresh-interval}
+ * catches any notification that got lost. Expired ids are purged from both
+ * every {@code jwt.revocation.purge-interval}.
+ */
+@Service
+@Slf4j
+public class RevocationServiceImpl implements RevocationService {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(30);
+    private static final String TOPIC = "revocations";
+
+    private RevokedTokenRepository repository;
+    private RevocationList revocationList;
+    private InvalidationBus bus;
+    private Duration refreshInterval;
+    private Duration purgeInterval;
+
+    // Polls overlap by one interval, so rows committed late are not skipped
+    private volatile Instant lastPoll = Instant.EPOCH;
+    private Disposable refresher;
+    private Disposable purger;
+
+    @Autowired
+    public RevocationServiceImpl(RevokedTokenRepository repository, RevocationList revocationList,
+                                 InvalidationBus bus,
+                                 @Value("${jwt.revocation.refresh-interval:10s}") Duration refreshInterval,
+                                 @Value("${jwt.revocation.purge-interval:10m}") Duration purgeInterval) {
+        this.repository = repository;
+        this.revocationList = revocationList;
+        this.bus = bus;
+        this.refreshInterval = refreshInterval;
+        this.purgeInterval = purgeInterval;
+    }
+
+    @PostConstruct
+    public void init() {
+        Instant startedAt = Instant.now();
+        repository.findActive()
+                .doOnNext(this::add)
+                .then()
+                .block(STARTUP_TIMEOUT);
+        lastPoll = startedAt;
+        bus.subscribe(TOPIC, this::onRevoked);
+        refresher = Flux.interval(refreshInterval, refreshInterval)
+                .concatMap(tick -> poll().onErrorResume(e -> {
+                    LOGGER.error("Revocation list refresh failed", e);
+                    return Mono.empty();
+                }))
+                .subscribe();
+        purger = Flux.interval(purgeInterval, purgeInterval)
+                .concatMap(tick -> purge().onErrorResume(e -> {
+                    LOGGER.error("Revocation list purge failed", e);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.dispose();
+        }
+        if (purger != null) {
+            purger.dispose();
+        }
+    }
+
+    @Override
+    public Mono<Void> revoke(String jti, Date expiresAt) {
+        LOGGER.debug("Revoking token {}", jti);
+        return repository.create(jti, expiresAt.toInstant())
+                .doOnSuccess(created -> revocationList.add(jti, expiresAt.getTime()))
+                .then(bus.publish(TOPIC, jti + ':' + expiresAt.getTime()));
+    }
+
+    // Payload is jti:expiresAtMillis, ALL after a reconnect asks for a poll of whatever was missed
+
+    private void onRevoked(String payload) {
+        int separator = payload.lastIndexOf(':');
+        if (separator < 0) {
+            poll().subscribe(null, e -> LOGGER.error("Revocation list refresh failed", e));
+            return;
+        }
+        revocationList.add(payload.substring(0, separator), Long.parseLong(payload.substring(separator + 1)));
+    }
+
+    private Mono<Void> poll() {
+        Instant startedAt = Instant.now();
+        return repository.findRevokedSince(lastPoll.minus(refreshInterval))
+                .doOnNext(this::add)
+                .then()
+                .doOnSuccess(done -> lastPoll = startedAt);
+    }
+
+    private Mono<Void> purge() {
+        return repository.deleteExpired()
+                .doOnNext(deleted -> revocationList.purgeExpired(System.currentTimeMillis()))
+                .then();
+    }
+
+    private void add(RevokedToken token) {
+        revocationList.add(token.getJti(), token.getExpiresAt().toEpochMilli());
+    }
+}
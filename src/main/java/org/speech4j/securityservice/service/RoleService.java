@@ -1,9 +1,12 @@
 package org.speech4j.securityservice.service;
 
+import org.speech4j.securityservice.dto.RoleAssignmentResult;
 import org.speech4j.securityservice.dto.RoleDto;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface RoleService {
 
     Flux<RoleDto> get();
@@ -22,4 +25,14 @@ public interface RoleService {
 
     Mono<Void> removeRoleFromUser(String userId, int roleId);
 
+    Mono<RoleAssignmentResult> addRoleToUsers(int roleId, List<String> userIds);
+
+    Mono<RoleAssignmentResult> removeRoleFromUsers(int roleId, List<String> userIds);
+
+    /**
+     * Replaces all roles of the user with the given ones and returns the
+     * roles the user ends up with.
+     */
+    Flux<RoleDto> setUserRoles(String userId, List<Integer> roleIds);
+
 }
@@ -1,38 +1,71 @@
 package org.speech4j.securityservice.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.speech4j.securityservice.domain.Role;
+import org.speech4j.securityservice.dto.RoleAssignmentResult;
 import org.speech4j.securityservice.dto.RoleDto;
 import org.speech4j.securityservice.exception.DataOperationException;
 import org.speech4j.securityservice.exception.EntityExistsException;
 import org.speech4j.securityservice.exception.EntityNotFoundException;
+import org.speech4j.securityservice.mapper.RoleMapper;
 import org.speech4j.securityservice.repository.RoleRepository;
+import org.speech4j.securityservice.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
 @Service
 @Slf4j
 public class RoleServiceImpl implements RoleService {
+    private static final String CATALOG_TOPIC = "roles";
+
     private RoleRepository repository;
-    private ModelMapper mapper = new ModelMapper();
+    private UserRepository userRepository;
+    private UserRoleCache userRoleCache;
+
+    // Read-through snapshot of the whole roles table, replaced after every change
+    private AtomicReference<Mono<RoleCatalog>> catalog = new AtomicReference<>();
+    private Duration catalogTtl;
+    private InvalidationBus bus;
+    private TransactionalOperator transactionalOperator;
 
     @Autowired
-    public RoleServiceImpl(RoleRepository roleRepository) {
+    public RoleServiceImpl(RoleRepository roleRepository, UserRepository userRepository,
+                           UserRoleCache userRoleCache, InvalidationBus bus,
+                           TransactionalOperator transactionalOperator,
+                           @Value("${roles.cache.ttl:5m}") Duration catalogTtl) {
         this.repository = roleRepository;
+        this.userRepository = userRepository;
+        this.userRoleCache = userRoleCache;
+        this.catalogTtl = catalogTtl;
+        this.bus = bus;
+        this.transactionalOperator = transactionalOperator;
+        this.catalog.set(loadCatalog());
+        bus.subscribe(CATALOG_TOPIC, key -> refreshCatalog());
     }
 
     @Override
     public Flux<RoleDto> get() {
-        return repository.findAll().map(this::mapRole);
+        return catalog.get().flatMapIterable(RoleCatalog::getRoles);
     }
 
     @Override
     public Mono<RoleDto> getById(int id) {
-        return handleNotFound(repository.findById(id), id + "");
+        return handleNotFound(catalog.get().flatMap(roles -> Mono.justOrEmpty(roles.getById(id))), id + "");
     }
 
     @Override
@@ -43,7 +76,7 @@ public class RoleServiceImpl implements RoleService {
                 repository.create(role.getName()),
                 role,
                 dto
-        );
+        ).delayUntil(created -> catalogChanged());
     }
 
     @Override
@@ -58,34 +91,127 @@ public class RoleServiceImpl implements RoleService {
         ).flatMap(role -> {
             LOGGER.debug("Updating role with following values: {}", role);
             return handleException(
-                    repository.update(role.getId(), role.getName()),
+                    transactionalOperator.transactional(repository.update(role.getId(), role.getName())
+                            .then(userRepository.bumpRolesVersionsOfRole(role.getId()))
+                            .then(Mono.<Role>empty())),
                     role,
                     dto
             );
-        });
+        }).delayUntil(updated -> catalogChanged()
+                .then(userRoleCache.invalidateAll()));
     }
 
+    // Holders are found before the delete cascades to their assignments
+
     @Override
     public Mono<Void> delete(int id) {
-        return repository.deleteById(id);
+        return transactionalOperator.transactional(userRepository.bumpRolesVersionsOfRole(id)
+                        .then(repository.deleteById(id)))
+                .then(catalogChanged())
+                .then(userRoleCache.invalidateAll());
     }
 
     @Override
     public Flux<RoleDto> findByUserId(String userId) {
-        return repository.findByUserId(userId).map(this::mapRole);
+        return userRoleCache.get(userId, id ->
+                repository.findByUserId(id).map(this::mapRole).collectList()
+        );
     }
 
+    // The change and its roles_version bump commit together, so no refresh token keeps a snapshot it predates
+
     @Override
     public Mono<RoleDto> addRoleToUser(String userId, int roleId) {
-        return repository.addRoleToUser(userId, roleId).map(this::mapRole);
+        Mono<RoleDto> change = andThen(repository.addRoleToUser(userId, roleId).map(this::mapRole),
+                userRepository.bumpRolesVersion(userId));
+        return andThen(transactionalOperator.transactional(change), userRoleCache.invalidate(userId));
     }
 
     @Override
     public Mono<Void> removeRoleFromUser(String userId, int roleId) {
-        return repository.removeRoleFromUser(userId, roleId);
+        return transactionalOperator.transactional(repository.removeRoleFromUser(userId, roleId)
+                        .then(userRepository.bumpRolesVersion(userId)))
+                .then(userRoleCache.invalidate(userId));
+    }
+
+    // Each batch is one set-based statement, committed together with the roles_version bump of its users
+
+    @Override
+    public Mono<RoleAssignmentResult> addRoleToUsers(int roleId, List<String> userIds) {
+        return changeUsers(roleId, userIds, ids -> repository.addRoleToUsers(roleId, ids));
+    }
+
+    @Override
+    public Mono<RoleAssignmentResult> removeRoleFromUsers(int roleId, List<String> userIds) {
+        return changeUsers(roleId, userIds, ids -> repository.removeRoleFromUsers(roleId, ids));
+    }
+
+    @Override
+    public Flux<RoleDto> setUserRoles(String userId, List<Integer> roleIds) {
+        Integer[] ids = new LinkedHashSet<>(roleIds).toArray(new Integer[0]);
+        return requireRoles(ids)
+                .then(transactionalOperator.transactional(
+                        repository.setUserRoles(userId, ids)
+                                .delayUntil(changed -> changed > 0 ? userRepository.bumpRolesVersion(userId) : Mono.empty())))
+                .doOnNext(changed -> LOGGER.debug("Set roles of user {} to {}, {} rows changed", userId, roleIds, changed))
+                .then(userRoleCache.invalidate(userId))
+                .thenMany(Flux.defer(() -> findByUserId(userId)));
     }
 
-    private Mono<RoleDto> handleNotFound(Mono<Role> roleMono, String field) {
+    private Mono<RoleAssignmentResult> changeUsers(int roleId, List<String> userIds,
+                                                   Function<String[], Mono<Integer>> change) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(userIds));
+        String[] ids = distinct.toArray(new String[0]);
+        if (ids.length == 0) {
+            return getById(roleId).thenReturn(new RoleAssignmentResult(roleId, 0, 0));
+        }
+        return getById(roleId)
+                .then(transactionalOperator.transactional(
+                        change.apply(ids).delayUntil(changed -> userRepository.bumpRolesVersions(ids))))
+                .delayUntil(changed -> userRoleCache.invalidate(distinct))
+                .doOnNext(changed -> LOGGER.debug("Role {} changed for {} of {} users", roleId, changed, ids.length))
+                .map(changed -> new RoleAssignmentResult(roleId, ids.length, changed));
+    }
+
+    // Unknown role ids fail the whole request instead of being skipped silently
+
+    private Mono<Void> requireRoles(Integer[] roleIds) {
+        return Flux.fromArray(roleIds)
+                .concatMap(this::getById)
+                .then();
+    }
+
+    // Runs the follow-up once the change completes, whether or not it returned a row
+
+    private static <T> Mono<T> andThen(Mono<T> change, Mono<?> followUp) {
+        return change.delayUntil(result -> followUp)
+                .switchIfEmpty(followUp.then(Mono.empty()));
+    }
+
+    // Reloads the local catalog now and tells the other instances to do the same
+
+    private Mono<Void> catalogChanged() {
+        return Mono.fromRunnable(this::refreshCatalog)
+                .then(bus.publish(CATALOG_TOPIC, InvalidationBus.ALL));
+    }
+
+    private void refreshCatalog() {
+        LOGGER.debug("Roles changed, reloading role catalog");
+        catalog.set(loadCatalog());
+    }
+
+    // Errors and empty results are not cached, the next reader retries the load
+
+    private Mono<RoleCatalog> loadCatalog() {
+        return repository.findAll()
+                .map(this::mapRole)
+                .collectList()
+                .map(RoleCatalog::new)
+                .doOnNext(roles -> LOGGER.debug("Loaded role catalog with {} roles", roles.getRoles().size()))
+                .cache(roles -> catalogTtl, error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    private Mono<RoleDto> handleNotFound(Mono<RoleDto> roleMono, String field) {
         return roleMono.switchIfEmpty(
                 Mono.error(new EntityNotFoundException("Role by field: "+field+" not found"))
         )
@@ -95,7 +221,7 @@ public class RoleServiceImpl implements RoleService {
                 })
                 .doOnNext(role ->
                         LOGGER.debug("Got role by field: [ {} ] user {}", field, role)
-                ).map(this::mapRole);
+                );
     }
 
     private Mono<RoleDto> handleException(Mono<Role> roleMono, Role role, RoleDto dto) {
@@ -110,16 +236,38 @@ public class RoleServiceImpl implements RoleService {
         }).thenReturn(role).map(this::mapRole);
     }
 
+    private static final class RoleCatalog {
+        private final List<RoleDto> roles;
+        private final Map<Integer, RoleDto> byId;
+
+        private RoleCatalog(List<RoleDto> roles) {
+            Map<Integer, RoleDto> byId = new HashMap<>();
+            for (RoleDto role : roles) {
+                byId.put(role.getId(), role);
+            }
+            this.roles = Collections.unmodifiableList(roles);
+            this.byId = Collections.unmodifiableMap(byId);
+        }
+
+        private List<RoleDto> getRoles() {
+            return roles;
+        }
+
+        private RoleDto getById(int id) {
+            return byId.get(id);
+        }
+    }
+
     // Maps Role to RoleDto object
 
     private RoleDto mapRole(Role role) {
-        return mapper.map(role, RoleDto.class);
+        return RoleMapper.toDto(role);
     }
 
     // Maps RoleDto to Role object
 
     private Role mapRoleDto(RoleDto roleDto) {
-        return mapper.map(roleDto, Role.class);
+        return RoleMapper.toEntity(roleDto);
     }
 
 }
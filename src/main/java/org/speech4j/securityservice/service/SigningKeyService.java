@@ -0,0 +1,16 @@
+package org.speech4j.securityservice.service;
+
+import org.speech4j.securityservice.dto.SigningKeyDto;
+import reactor.core.publisher.Mono;
+
+public interface SigningKeyService {
+    Mono<SigningKeyDto> rotate(boolean immediate);
+
+    /**
+     * Removes the key from the ring of every instance, its tokens stop
+     * verifying at once. A key that is signing gets an active successor first.
+     */
+    Mono<Void> retire(String kid);
+
+    Mono<Void> refresh();
+}
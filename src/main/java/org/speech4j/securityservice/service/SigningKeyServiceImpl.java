@@ -0,0 +1,251 @@
+package org.speech4j.securityservice.service;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.extern.slf4j.Slf4j;
+import org.speech4j.securityservice.domain.SigningKey;
+import org.speech4j.securityservice.dto.SigningKeyDto;
+import org.speech4j.securityservice.exception.EntityNotFoundException;
+import org.speech4j.securityservice.repository.SigningKeyRepository;
+import org.speech4j.securityservice.security.TokenCache;
+import org.speech4j.securityservice.util.JwtKey;
+import org.speech4j.securityservice.util.JwtKeyRing;
+import org.speech4j.securityservice.util.PrivateKeyCipher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the JWT key ring in the database so every instance signs and verifies
+ * with the same keys. New keys are published in the JWKS for
+ * {@code jwt.keys.activation-delay} before they sign, and old keys are kept
+ * until the last token they signed has expired. A new key is announced on the
+ * {@link InvalidationBus} so the other instances reload the ring right away
+ * instead of on their next {@code jwt.keys.refresh-interval} tick, and so is
+ * a retired key. Private keys are stored through {@link PrivateKeyCipher}.
+ */
+@Service
+@Slf4j
+public class SigningKeyServiceImpl implements SigningKeyService {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(30);
+    private static final String TOPIC = "signing-keys";
+    // Arbitrary key shared by every instance, distinct from the schema migrator's
+    private static final long LOCK_KEY = 0x5ec5e7f1c0L;
+
+    private SigningKeyRepository repository;
+    private JwtKeyRing keyRing;
+    private InvalidationBus bus;
+    private PrivateKeyCipher cipher;
+    private TokenCache tokenCache;
+    private TransactionalOperator transactionalOperator;
+    private SignatureAlgorithm algorithm;
+    private Duration rotationInterval;
+    private Duration activationDelay;
+    private Duration refreshInterval;
+    private Duration tokenLifetime;
+
+    @Value("${jwt.signing.private-key:}")
+    private String privateKeyPath;
+
+    @Value("${jwt.signing.public-key:}")
+    private String publicKeyPath;
+
+    private Disposable ticker;
+
+    @Autowired
+    public SigningKeyServiceImpl(SigningKeyRepository repository, JwtKeyRing keyRing, InvalidationBus bus,
+                                 PrivateKeyCipher cipher, TokenCache tokenCache,
+                                 TransactionalOperator transactionalOperator,
+                                 @Value("${jwt.signing.algorithm:ES256}") String algorithm,
+                                 @Value("${jwt.keys.rotation-interval:7d}") Duration rotationInterval,
+                                 @Value("${jwt.keys.activation-delay:10m}") Duration activationDelay,
+                                 @Value("${jwt.keys.refresh-interval:1m}") Duration refreshInterval,
+                                 @Value("${jwt.expiration}") long expiration) {
+        this.repository = repository;
+        this.keyRing = keyRing;
+        this.bus = bus;
+        this.cipher = cipher;
+        this.tokenCache = tokenCache;
+        this.transactionalOperator = transactionalOperator;
+        this.algorithm = SignatureAlgorithm.forName(algorithm);
+        this.rotationInterval = rotationInterval;
+        this.activationDelay = activationDelay;
+        this.refreshInterval = refreshInterval;
+        this.tokenLifetime = Duration.ofSeconds(expiration);
+    }
+
+    // Tokens can't be issued without a key, so the first load blocks startup
+
+    @PostConstruct
+    public void init() {
+        locked(repository.findAll().hasElements()
+                .flatMap(exists -> exists ? Mono.empty() : insert(initialKey(), Duration.ZERO)))
+                .then(encryptStoredKeys())
+                .then(refresh())
+                .block(STARTUP_TIMEOUT);
+        bus.subscribe(TOPIC, kid -> refresh().subscribe(null, e -> LOGGER.error("Signing key refresh failed", e)));
+        ticker = Flux.interval(refreshInterval, refreshInterval)
+                .concatMap(tick -> maintain()
+                        .onErrorResume(e -> {
+                            LOGGER.error("Signing key maintenance failed", e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+    }
+
+    @Override
+    public Mono<SigningKeyDto> rotate(boolean immediate) {
+        JwtKey key = JwtKey.generate(algorithm);
+        Duration delay = immediate ? Duration.ZERO : activationDelay;
+        LOGGER.debug("Rotating signing key [kid: {}, immediate: {}]", key.getKid(), immediate);
+        return insert(key, delay)
+                .then(refresh())
+                .then(Mono.fromSupplier(() ->
+                        new SigningKeyDto(key.getKid(), key.getAlgorithm().getValue(), Instant.now().plus(delay))));
+    }
+
+    @Override
+    public Mono<Void> retire(String kid) {
+        return repository.findById(kid)
+                .switchIfEmpty(Mono.error(new EntityNotFoundException("Signing key " + kid + " not found")))
+                .flatMap(row -> isSigning(kid) ? insert(JwtKey.generate(algorithm), Duration.ZERO) : Mono.empty())
+                .then(repository.deleteByKid(kid))
+                .then(bus.publish(TOPIC, kid))
+                .then(refresh());
+    }
+
+    @Override
+    public Mono<Void> refresh() {
+        return repository.findAll()
+                .collectList()
+                .doOnNext(this::install)
+                .then();
+    }
+
+    // Any instance may rotate, created_at tells the others that it already happened
+
+    private Mono<Void> maintain() {
+        return locked(repository.existsCreatedWithin(rotationInterval.getSeconds())
+                .flatMap(recent -> recent ? Mono.empty() : insert(JwtKey.generate(algorithm), activationDelay)))
+                .then(repository.deleteRetired(tokenLifetime.getSeconds()))
+                .doOnNext(deleted -> {
+                    if (deleted > 0) {
+                        LOGGER.debug("Removed {} retired signing keys", deleted);
+                    }
+                })
+                .then(refresh());
+    }
+
+    // Instances tick together, the lock makes the key check and the insert one step. NOTIFY is sent on commit
+
+    private Mono<Void> locked(Mono<Void> work) {
+        return transactionalOperator.transactional(repository.lock(LOCK_KEY).then(work));
+    }
+
+    private Mono<Void> insert(JwtKey key, Duration delay) {
+        return repository.create(key.getKid(), key.getAlgorithm().getValue(),
+                cipher.seal(key.getKid(), key.getPrivateKey().getEncoded()), key.getPublicKey().getEncoded(),
+                delay.getSeconds())
+                .then(bus.publish(TOPIC, key.getKid()));
+    }
+
+    // Keys stored before an encryption key was configured are encrypted in place
+
+    private Mono<Void> encryptStoredKeys() {
+        if (!cipher.isEnabled()) {
+            return Mono.empty();
+        }
+        return repository.findAll()
+                .filter(row -> !cipher.isEncrypted(row.getPrivateKey()))
+                .concatMap(row -> repository.updatePrivateKey(row.getKid(), cipher.seal(row.getKid(), row.getPrivateKey())))
+                .reduce(0, Integer::sum)
+                .doOnNext(encrypted -> {
+                    if (encrypted > 0) {
+                        LOGGER.info("Encrypted {} stored signing keys", encrypted);
+                    }
+                })
+                .then();
+    }
+
+    private boolean isSigning(String kid) {
+        try {
+            return keyRing.getSigningKey().getKid().equals(kid);
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    // Rows are ordered by activation, so the last active one signs
+
+    private void install(List<SigningKey> rows) {
+        Instant now = Instant.now();
+        JwtKey signingKey = null;
+        List<JwtKey> keys = new ArrayList<>(rows.size());
+        Set<String> kids = new HashSet<>();
+        for (SigningKey row : rows) {
+            JwtKey key = keyRing.find(row.getKid());
+            if (key == null) {
+                key = JwtKey.decode(SignatureAlgorithm.forName(row.getAlgorithm()),
+                        cipher.open(row.getKid(), row.getPrivateKey()), row.getPublicKey());
+            }
+            keys.add(key);
+            kids.add(row.getKid());
+            if (!row.getActivatesAt().isAfter(now)) {
+                signingKey = key;
+            }
+        }
+        if (signingKey == null) {
+            LOGGER.warn("No active signing key, tokens can't be issued until one activates");
+        }
+        // Cached authentications skip verification, so they must go with any key that left the ring
+        boolean removed = keyRing.getKeys().stream().anyMatch(key -> !kids.contains(key.getKid()));
+        keyRing.install(signingKey, keys);
+        if (removed) {
+            tokenCache.evictAll();
+        }
+        LOGGER.debug("Key ring loaded [keys: {}, signing: {}]", keys.size(),
+                signingKey == null ? null : signingKey.getKid());
+    }
+
+    // The configured PEM pair seeds an empty ring, otherwise a fresh key is generated
+
+    private JwtKey initialKey() {
+        if (privateKeyPath == null || privateKeyPath.isEmpty()) {
+            return JwtKey.generate(algorithm);
+        }
+        return JwtKey.decode(algorithm, readPem(privateKeyPath), readPem(publicKeyPath));
+    }
+
+    private static byte[] readPem(String path) {
+        try {
+            String pem = new String(Files.readAllBytes(Paths.get(path)));
+            return Base64.getMimeDecoder().decode(pem.replaceAll("-----[A-Z ]+-----", ""));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read key file " + path, e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.speech4j.securityservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.speech4j.securityservice.dto.RoleDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of the roles assigned to each user. Concurrent misses for
+ * the same user share one in-flight load, failed loads are not cached.
+ * {@link #invalidate(String)} also evicts the entry on every other instance
+ * through the {@link InvalidationBus}.
+ */
+@Slf4j
+@Component
+public class UserRoleCache {
+    private static final String TOPIC = "user-roles";
+    // NOTIFY payloads are capped at 8000 bytes, larger id lists make every instance drop all entries
+    private static final int MAX_PAYLOAD = 7900;
+
+    private final AsyncCache<String, List<RoleDto>> cache;
+    private final InvalidationBus bus;
+
+    @Autowired
+    public UserRoleCache(@Value("${roles.user-cache.max-size:10000}") long maxSize,
+                         @Value("${roles.user-cache.ttl:10m}") Duration ttl,
+                         MeterRegistry registry, InvalidationBus bus) {
+        this.bus = bus;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "roles.by-user");
+        bus.subscribe(TOPIC, userIds -> {
+            if (InvalidationBus.ALL.equals(userIds)) {
+                evictAll();
+            } else {
+                for (String userId : userIds.split(",")) {
+                    evict(userId);
+                }
+            }
+        });
+    }
+
+    public Flux<RoleDto> get(String userId, Function<String, Mono<List<RoleDto>>> loader) {
+        return Mono.defer(() -> Mono.fromFuture(
+                cache.get(userId, (key, executor) -> loader.apply(key).toFuture())
+        )).flatMapIterable(Function.identity());
+    }
+
+    public void evict(String userId) {
+        LOGGER.debug("Evicting cached roles of user {}", userId);
+        cache.synchronous().invalidate(userId);
+    }
+
+    public void evictAll() {
+        LOGGER.debug("Evicting cached roles of all users");
+        cache.synchronous().invalidateAll();
+    }
+
+    public Mono<Void> invalidate(String userId) {
+        return Mono.fromRunnable(() -> evict(userId))
+                .then(bus.publish(TOPIC, userId));
+    }
+
+    public Mono<Void> invalidate(Collection<String> userIds) {
+        return Mono.defer(() -> {
+            LOGGER.debug("Evicting cached roles of {} users", userIds.size());
+            cache.synchronous().invalidateAll(userIds);
+            String joined = String.join(",", userIds);
+            return bus.publish(TOPIC, joined.length() <= MAX_PAYLOAD ? joined : InvalidationBus.ALL);
+        });
+    }
+
+    public Mono<Void> invalidateAll() {
+        return Mono.fromRunnable(this::evictAll)
+                .then(bus.publish(TOPIC, InvalidationBus.ALL));
+    }
+}
@@ -1,24 +1,56 @@
 package org.speech4j.securityservice.service;
 
 import org.speech4j.securityservice.dto.UserDto;
+import org.speech4j.securityservice.dto.UserImportResult;
+import org.speech4j.securityservice.dto.UserWithRolesDto;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.util.List;
 
 public interface UserService extends ReactiveUserDetailsService {
 
     Flux<UserDto> get(int max, int offset);
 
+    Flux<UserDto> getPage(String after, int max);
+
+    Flux<UserWithRolesDto> export(boolean withRoles);
+
+    Flux<UserDto> getPageByRoleId(int roleId, String after, int max);
+
+    /**
+     * Streams every user holding the role after the given id, as fast as
+     * the caller reads them.
+     */
+    Flux<UserDto> streamByRoleId(int roleId, String after);
+
     Mono<UserDto> getById(String id);
 
+    /**
+     * Resolves many ids with a single query. Users that don't exist are left
+     * out, the rest come in no particular order.
+     */
+    Flux<UserWithRolesDto> getByIds(List<String> ids, boolean withRoles);
+
     Mono<UserDto> getByEmail(String email);
 
     Mono<UserDto> getByUsername(String username);
 
     Mono<UserDto> create(UserDto dto);
 
+    /**
+     * Creates already validated users, given with their row in the request,
+     * in batches. Emits one result per row.
+     */
+    Flux<UserImportResult> importUsers(Flux<Tuple2<Long, UserDto>> rows);
+
     Mono<UserDto> update(String id, UserDto dto);
 
     Mono<Void> delete(String id);
 
+    void rehashPasswordIfNeeded(UserDetails user, String rawPassword);
+
 }
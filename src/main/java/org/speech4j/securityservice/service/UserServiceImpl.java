@@ -1,24 +1,29 @@
 package org.speech4j.securityservice.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
-import org.speech4j.securityservice.domain.Role;
 import org.speech4j.securityservice.domain.User;
 import org.speech4j.securityservice.dto.UserDto;
+import org.speech4j.securityservice.dto.UserImportResult;
+import org.speech4j.securityservice.dto.UserWithRolesDto;
 import org.speech4j.securityservice.exception.DataOperationException;
 import org.speech4j.securityservice.exception.EntityExistsException;
 import org.speech4j.securityservice.exception.EntityNotFoundException;
-import org.speech4j.securityservice.repository.RoleRepository;
+import org.speech4j.securityservice.mapper.UserMapper;
+import org.speech4j.securityservice.repository.RefreshTokenRepository;
 import org.speech4j.securityservice.repository.UserRepository;
+import org.speech4j.securityservice.security.PasswordHasher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -28,15 +33,29 @@ import java.util.stream.Collectors;
 public class UserServiceImpl implements UserService, ReactiveUserDetailsService {
 
     private UserRepository userRepository;
-    private RoleRepository roleRepository;
-    private ModelMapper mapper = new ModelMapper();
-    private PasswordEncoder encoder;
+    private RefreshTokenRepository refreshTokenRepository;
+    private PasswordHasher hasher;
+    private UserRoleCache userRoleCache;
+    private TransactionalOperator transactionalOperator;
+    private int exportFetchSize;
+    private int importBatchSize;
+    private int importHashConcurrency;
 
     @Autowired
-    public UserServiceImpl(UserRepository userRepository, PasswordEncoder encoder, RoleRepository roleRepository) {
+    public UserServiceImpl(UserRepository userRepository, RefreshTokenRepository refreshTokenRepository,
+                           PasswordHasher hasher, UserRoleCache userRoleCache,
+                           TransactionalOperator transactionalOperator,
+                           @Value("${users.export.fetch-size:500}") int exportFetchSize,
+                           @Value("${users.import.batch-size:500}") int importBatchSize,
+                           @Value("${users.import.hash-concurrency:4}") int importHashConcurrency) {
         this.userRepository = userRepository;
-        this.roleRepository = roleRepository;
-        this.encoder = encoder;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.hasher = hasher;
+        this.userRoleCache = userRoleCache;
+        this.transactionalOperator = transactionalOperator;
+        this.exportFetchSize = exportFetchSize;
+        this.importBatchSize = importBatchSize;
+        this.importHashConcurrency = importHashConcurrency;
     }
 
     @Override
@@ -44,11 +63,40 @@ public class UserServiceImpl implements UserService, ReactiveUserDetailsService
         return userRepository.findAll(max, offset).map(this::mapUser);
     }
 
+    @Override
+    public Flux<UserDto> getPage(String after, int max) {
+        return userRepository.findAllAfter(after, max).map(this::mapUser);
+    }
+
+    @Override
+    public Flux<UserWithRolesDto> export(boolean withRoles) {
+        return userRepository.streamAll(withRoles, exportFetchSize).map(UserMapper::toWithRolesDto);
+    }
+
+    @Override
+    public Flux<UserDto> getPageByRoleId(int roleId, String after, int max) {
+        return userRepository.findByRoleIdAfter(roleId, after, max).map(this::mapUser);
+    }
+
+    @Override
+    public Flux<UserDto> streamByRoleId(int roleId, String after) {
+        return userRepository.streamByRoleId(roleId, after, exportFetchSize).map(this::mapUser);
+    }
+
     @Override
     public Mono<UserDto> getById(String id) {
         return handleNotFound(userRepository.findById(id), id);
     }
 
+    @Override
+    public Flux<UserWithRolesDto> getByIds(List<String> ids, boolean withRoles) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        String[] distinct = ids.stream().distinct().toArray(String[]::new);
+        return userRepository.findAllByIds(distinct, withRoles).map(UserMapper::toWithRolesDto);
+    }
+
     @Override
     public Mono<UserDto> getByEmail(String email) {
         return handleNotFound(userRepository.findByEmail(email), email);
@@ -61,22 +109,28 @@ public class UserServiceImpl implements UserService, ReactiveUserDetailsService
 
     @Override
     public Mono<UserDto> create(UserDto dto) {
-        dto.setId(UUID.randomUUID().toString());
-        try {
-            if (dto.getUsername().trim().equals("")) {
-                dto.setUsername(dto.getEmail());
-            }
-        } catch (NullPointerException ignore) {
-            dto.setUsername(dto.getEmail());
-        }
+        assignIdentity(dto);
         User user = mapUserDto(dto);
-        user.setPassword(encoder.encode(user.getPassword()));
-        LOGGER.debug("Creating user with following values: {}", user);
-        return handleException(
-            userRepository.create(user.getId(), user.getEmail(), user.getPassword(), user.getUsername()),
-            user,
-            dto
-        );
+        return hasher.encode(user.getPassword()).flatMap(hash -> {
+            user.setPassword(hash);
+            LOGGER.debug("Creating user with following values: {}", user);
+            return handleException(
+                userRepository.create(user.getId(), user.getEmail(), user.getPassword(), user.getUsername()),
+                user,
+                dto
+            );
+        });
+    }
+
+    // Hashing is the slow part, so rows are hashed in parallel while earlier batches are written.
+    // Batches are only cut by size, which waits for demand, so a slow insert holds back hashing instead of overflowing
+
+    @Override
+    public Flux<UserImportResult> importUsers(Flux<Tuple2<Long, UserDto>> rows) {
+        return rows
+                .flatMap(row -> hashForImport(row.getT1(), row.getT2()), importHashConcurrency)
+                .buffer(importBatchSize)
+                .concatMap(this::insertBatch);
     }
 
     @Override
@@ -88,22 +142,43 @@ public class UserServiceImpl implements UserService, ReactiveUserDetailsService
                     new User(existingUser.getId(),
                     user.getUsername(),
                     existingUser.getEmail(),
-                    encoder.encode(user.getPassword()),
-                    existingUser.getRoles()
+                    user.getPassword(),
+                    existingUser.getRoles(),
+                    existingUser.getRolesVersion()
             )
-        ).flatMap(user -> {
+        ).flatMap(user -> hasher.encode(user.getPassword()).flatMap(hash -> {
+            user.setPassword(hash);
             LOGGER.debug("Updating user with following values: {}", user);
+            // New credentials end every session that was started with the old ones, in the same transaction
             return handleException(
-                userRepository.update(user.getId(), user.getUsername(), user.getPassword()),
+                transactionalOperator.transactional(refreshTokenRepository.deleteByUserId(user.getId())
+                    .then(userRepository.update(user.getId(), user.getUsername(), user.getPassword()))),
                 user,
                 dto
             );
-        });
+        }));
     }
 
     @Override
     public Mono<Void> delete(String id) {
-        return userRepository.deleteById(id);
+        return userRepository.deleteById(id)
+            .then(userRoleCache.invalidate(id));
+    }
+
+    // Runs in background, a failed rehash is retried on the next login
+
+    @Override
+    public void rehashPasswordIfNeeded(UserDetails user, String rawPassword) {
+        if (!hasher.needsRehash(user.getPassword())) {
+            return;
+        }
+        hasher.encode(rawPassword)
+            .flatMap(hash -> userRepository.updatePassword(user.getUsername(), hash, user.getPassword()))
+            .subscribe(
+                ignore -> { },
+                err -> LOGGER.warn("Password rehash failed for user {}: {}", user.getUsername(), err.getLocalizedMessage()),
+                () -> LOGGER.debug("Password rehashed for user {}", user.getUsername())
+            );
     }
 
     private Mono<UserDto> handleNotFound(Mono<User> userMono, String field) {
@@ -135,28 +210,103 @@ public class UserServiceImpl implements UserService, ReactiveUserDetailsService
 
     @Override
     public Mono<UserDetails> findByUsername(String username) {
-        Mono<User> userMono = getByUsername(username).map(this::mapUserDto);
-        return userMono.flatMap(user -> {
-            LOGGER.debug("Found user {}", user);
-            Mono<Set<Role>> setMono = roleRepository.findByUserId(user.getId()).collect(Collectors.toSet());
-            return setMono.flatMap(roles -> {
-                user.setRoles(roles);
-                LOGGER.debug("User with roles: {}", user);
-                return Mono.just(user);
-            });
-        });
+        return userRepository.findWithRolesByUsername(username)
+            .switchIfEmpty(
+                Mono.error(new EntityNotFoundException("User by field: "+username+" not found"))
+            )
+            .doOnNext(user -> LOGGER.debug("User with roles: {}", user))
+            .cast(UserDetails.class);
+    }
+
+    private static void assignIdentity(UserDto dto) {
+        dto.setId(UUID.randomUUID().toString());
+        try {
+            if (dto.getUsername().trim().equals("")) {
+                dto.setUsername(dto.getEmail());
+            }
+        } catch (NullPointerException ignore) {
+            dto.setUsername(dto.getEmail());
+        }
+    }
+
+    // The import hashes on its own pool, so it never fills the queue logins wait in
+
+    private Mono<ImportRow> hashForImport(long row, UserDto dto) {
+        assignIdentity(dto);
+        User user = mapUserDto(dto);
+        return hasher.encodeForImport(user.getPassword())
+                .map(hash -> {
+                    user.setPassword(hash);
+                    return new ImportRow(row, user, null);
+                })
+                .onErrorResume(e -> {
+                    LOGGER.error("Password hashing failed for imported row {}: {}", row, e.getLocalizedMessage());
+                    return Mono.just(new ImportRow(row, user, "Password hashing failed"));
+                });
+    }
+
+    private Flux<UserImportResult> insertBatch(List<ImportRow> batch) {
+        List<User> users = batch.stream()
+                .filter(row -> row.failure == null)
+                .map(row -> row.user)
+                .collect(Collectors.toList());
+        if (users.isEmpty()) {
+            return Flux.fromIterable(batch).map(row -> row.toResult(null));
+        }
+        LOGGER.debug("Inserting batch of {} imported users", users.size());
+        return userRepository.createAll(
+                users.stream().map(User::getId).toArray(String[]::new),
+                users.stream().map(User::getEmail).toArray(String[]::new),
+                users.stream().map(User::getPassword).toArray(String[]::new),
+                users.stream().map(User::getUsername).toArray(String[]::new)
+        )
+                .collect(Collectors.toSet())
+                .flatMapMany(created -> Flux.fromIterable(batch).map(row -> row.toResult(created)))
+                .onErrorResume(e -> {
+                    LOGGER.error("Import batch of {} users failed: {}", users.size(), e.getLocalizedMessage());
+                    return Flux.fromIterable(batch).map(row -> row.failed("Insert failed"));
+                });
+    }
+
+    private static final class ImportRow {
+        private final long row;
+        private final User user;
+        private final String failure;
+
+        private ImportRow(long row, User user, String failure) {
+            this.row = row;
+            this.user = user;
+            this.failure = failure;
+        }
+
+        // Rows missing from the RETURNING set clashed with an existing user
+
+        private UserImportResult toResult(Set<String> created) {
+            if (failure != null) {
+                return failed(failure);
+            }
+            if (created.contains(user.getId())) {
+                return new UserImportResult(row, UserImportResult.Status.CREATED, user.getId(), user.getUsername(), null);
+            }
+            return new UserImportResult(row, UserImportResult.Status.EXISTS, null, user.getUsername(),
+                    "User with this email or username already exists");
+        }
+
+        private UserImportResult failed(String message) {
+            return new UserImportResult(row, UserImportResult.Status.FAILED, null, user.getUsername(), message);
+        }
     }
 
     // Maps User to UserDto object
 
     private UserDto mapUser(User user) {
-        return mapper.map(user, UserDto.class);
+        return UserMapper.toDto(user);
     }
 
     // Maps UserDto to User object
 
     private User mapUserDto(UserDto userDto) {
-        return mapper.map(userDto, User.class);
+        return UserMapper.toEntity(userDto);
     }
     
 }
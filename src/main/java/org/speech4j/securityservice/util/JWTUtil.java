@@ -1,43 +1,122 @@
 package org.speech4j.securityservice.util;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SecurityException;
+import io.jsonwebtoken.security.SignatureException;
 import lombok.extern.slf4j.Slf4j;
-import org.speech4j.securityservice.domain.User;
-import org.speech4j.securityservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.security.Key;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Slf4j
 @Component
 public class JWTUtil {
 
-    @Value("${jwt.secret}")
+    // Only verifies HS512 tokens issued before asymmetric signing, empty turns them away
+    @Value("${jwt.secret:}")
     private String secret;
 
+    // HS512 tokens issued after this instant are refused, required together with jwt.secret
+    @Value("${jwt.legacy-cutover:}")
+    private String legacyCutover;
+
     @Value("${jwt.expiration}")
     private String expirationTime;
-    private Key key;
+
+    @Autowired
+    private JwtKeyRing keyRing;
+
+    private Key legacyKey;
+    private Date legacyIssuedBefore;
+    private Date legacyExpiresBefore;
+    // JwtParser is immutable and thread-safe, so one instance serves all requests
+    private JwtParser parser;
 
     @PostConstruct
     public void init() {
-        this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        if (secret != null && !secret.isEmpty()) {
+            if (legacyCutover == null || legacyCutover.isEmpty()) {
+                throw new IllegalStateException("jwt.legacy-cutover must be set together with jwt.secret");
+            }
+            Instant cutover = Instant.parse(legacyCutover);
+            // A token issued before the cutover can't legitimately expire later than one lifetime after it
+            Instant lastExpiry = cutover.plusSeconds(Long.parseLong(expirationTime));
+            this.legacyKey = Keys.hmacShaKeyFor(secret.getBytes());
+            this.legacyIssuedBefore = Date.from(cutover);
+            this.legacyExpiresBefore = Date.from(lastExpiry);
+            if (Instant.now().isAfter(lastExpiry)) {
+                LOGGER.warn("Every HS512 token has expired since {}, jwt.secret can be removed", lastExpiry);
+            } else {
+                LOGGER.info("Accepting HS512 tokens issued until {} and expiring by {}", cutover, lastExpiry);
+            }
+        }
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new KidResolver())
+                .build();
+    }
+
+    /**
+     * Public keys of the key ring as a JWK Set, served to other services so
+     * they can verify tokens without calling us.
+     */
+    public Map<String, Object> getJwks() {
+        return keyRing.getJwks();
     }
 
     public Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    /**
+     * Parses and verifies the token exactly once. Never throws, callers
+     * branch on {@link TokenValidationResult#getStatus()} instead.
+     */
+    public TokenValidationResult validate(String token) {
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            return TokenValidationResult.valid(claims, getAuthorities(claims));
+        } catch (ExpiredJwtException e) {
+            return TokenValidationResult.expired();
+        } catch (SecurityException e) {
+            return TokenValidationResult.badSignature();
+        } catch (JwtException | IllegalArgumentException | ClassCastException e) {
+            return TokenValidationResult.malformed();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<GrantedAuthority> getAuthorities(Claims claims) {
+        List<Map<String, String>> roles = claims.get("role", List.class);
+        if (roles == null || roles.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(roles.size());
+        for (Map<String, String> role : roles) {
+            authorities.add(new SimpleGrantedAuthority(role.get("authority")));
+        }
+        return Collections.unmodifiableList(authorities);
     }
 
     public String getUsernameFromToken(String token) {
@@ -48,33 +127,72 @@ public class JWTUtil {
         return getAllClaimsFromToken(token).getExpiration();
     }
 
-    private Boolean isTokenExpired(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
+    public String generateToken(UserDetails user) {
+        return generateToken(user.getUsername(), user.getAuthorities());
     }
 
-    public String generateToken(UserDetails user) {
+    public String generateToken(String username, Collection<? extends GrantedAuthority> authorities) {
         Map<String, Object> claims = new HashMap<>();
-        claims.put("role", user.getAuthorities());
-        return doGenerateToken(claims, user.getUsername());
+        claims.put("role", authorities);
+        return doGenerateToken(claims, username);
     }
 
     private String doGenerateToken(Map<String, Object> claims, String username) {
         //in second
         long expirationTimeLong = Long.parseLong(expirationTime);
 
+        final JwtKey signingKey = keyRing.getSigningKey();
         final Date createdDate = new Date();
         final Date expirationDate = new Date(createdDate.getTime() + expirationTimeLong * 1000);
 
         return Jwts.builder()
                 .setClaims(claims)
+                .setId(UUID.randomUUID().toString())
                 .setSubject(username)
                 .setIssuedAt(createdDate)
                 .setExpiration(expirationDate)
-                .signWith(key).compact();
+                .setHeaderParam(JwsHeader.KEY_ID, signingKey.getKid())
+                .signWith(signingKey.getPrivateKey(), signingKey.getAlgorithm()).compact();
     }
 
     public Boolean validateToken(String token) {
-        return !isTokenExpired(token);
+        return validate(token).isValid();
+    }
+
+    // Picks the verification key by kid, an unknown kid or a refused HS512 token fails like a bad signature
+
+    private final class KidResolver extends SigningKeyResolverAdapter {
+        // jjwt 0.11 declares the header parameter raw, an override can't add the wildcard
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            return resolve((JwsHeader<?>) header, claims);
+        }
+
+        private Key resolve(JwsHeader<?> header, Claims claims) {
+            if (header.getAlgorithm().startsWith("HS")) {
+                return resolveLegacy(claims);
+            }
+            JwtKey key = keyRing.find(header.getKeyId());
+            if (key != null) {
+                return key.getPublicKey();
+            }
+            throw new SignatureException("Unknown signing key " + header.getKeyId());
+        }
+
+        // The claims aren't verified yet, but they can only narrow what the HMAC check would accept
+
+        private Key resolveLegacy(Claims claims) {
+            if (legacyKey == null) {
+                throw new SignatureException("HS512 tokens are not accepted");
+            }
+            Date issuedAt = claims.getIssuedAt();
+            Date expiration = claims.getExpiration();
+            if (issuedAt == null || issuedAt.after(legacyIssuedBefore)
+                    || expiration == null || expiration.after(legacyExpiresBefore)) {
+                throw new SignatureException("HS512 token outside the legacy window");
+            }
+            return legacyKey;
+        }
     }
 }
@@ -0,0 +1,166 @@
+package org.speech4j.securityservice.util;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Asymmetric key pair used to sign tokens, identified by a {@code kid}.
+ * The public half is published as a JWK so other services can verify our
+ * tokens offline. The kid is the RFC 7638 thumbprint of that JWK.
+ */
+public final class JwtKey {
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final String kid;
+    private final SignatureAlgorithm algorithm;
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final Map<String, Object> jwk;
+
+    private JwtKey(SignatureAlgorithm algorithm, PrivateKey privateKey, PublicKey publicKey) {
+        this.algorithm = algorithm;
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+        Map<String, Object> members = publicMembers(algorithm, publicKey);
+        this.kid = thumbprint(members);
+
+        Map<String, Object> jwk = new LinkedHashMap<>(members);
+        jwk.put("kid", kid);
+        jwk.put("use", "sig");
+        jwk.put("alg", algorithm.getValue());
+        this.jwk = Collections.unmodifiableMap(jwk);
+    }
+
+    public static JwtKey generate(SignatureAlgorithm algorithm) {
+        requireAsymmetric(algorithm);
+        KeyPair pair = Keys.keyPairFor(algorithm);
+        return new JwtKey(algorithm, pair.getPrivate(), pair.getPublic());
+    }
+
+    /**
+     * Restores a key pair from its PKCS#8 private and X.509 public encodings.
+     * {@code privateKey} may be null for a key that only verifies tokens.
+     */
+    public static JwtKey decode(SignatureAlgorithm algorithm, byte[] privateKey, byte[] publicKey) {
+        requireAsymmetric(algorithm);
+        try {
+            KeyFactory factory = KeyFactory.getInstance(algorithm.getFamilyName().equals("RSA") ? "RSA" : "EC");
+            PrivateKey privateKeyValue = privateKey == null ? null
+                    : factory.generatePrivate(new PKCS8EncodedKeySpec(privateKey));
+            return new JwtKey(algorithm, privateKeyValue, factory.generatePublic(new X509EncodedKeySpec(publicKey)));
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new IllegalArgumentException("Invalid " + algorithm.getValue() + " key", e);
+        }
+    }
+
+    public String getKid() {
+        return kid;
+    }
+
+    public SignatureAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public Map<String, Object> toJwk() {
+        return jwk;
+    }
+
+    private static void requireAsymmetric(SignatureAlgorithm algorithm) {
+        if (!algorithm.isRsa() && !algorithm.isEllipticCurve()) {
+            throw new IllegalArgumentException("Unsupported signing algorithm " + algorithm.getValue());
+        }
+    }
+
+    // Required members only, in lexicographic order as RFC 7638 needs them for the thumbprint
+
+    private static Map<String, Object> publicMembers(SignatureAlgorithm algorithm, PublicKey publicKey) {
+        Map<String, Object> members = new LinkedHashMap<>();
+        if (publicKey instanceof RSAPublicKey) {
+            RSAPublicKey rsa = (RSAPublicKey) publicKey;
+            members.put("e", encode(rsa.getPublicExponent(), 0));
+            members.put("kty", "RSA");
+            members.put("n", encode(rsa.getModulus(), 0));
+        } else if (publicKey instanceof ECPublicKey) {
+            ECPublicKey ec = (ECPublicKey) publicKey;
+            int size = (ec.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+            members.put("crv", curveName(algorithm));
+            members.put("kty", "EC");
+            members.put("x", encode(ec.getW().getAffineX(), size));
+            members.put("y", encode(ec.getW().getAffineY(), size));
+        } else {
+            throw new IllegalArgumentException("Unsupported public key " + publicKey.getAlgorithm());
+        }
+        return members;
+    }
+
+    private static String curveName(SignatureAlgorithm algorithm) {
+        switch (algorithm) {
+            case ES256:
+                return "P-256";
+            case ES384:
+                return "P-384";
+            default:
+                return "P-521";
+        }
+    }
+
+    // Unsigned big-endian bytes, left padded to size for EC coordinates
+
+    private static String encode(BigInteger value, int size) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (bytes.length < size) {
+            byte[] padded = new byte[size];
+            System.arraycopy(bytes, 0, padded, size - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return BASE64URL.encodeToString(bytes);
+    }
+
+    private static String thumbprint(Map<String, Object> members) {
+        StringBuilder json = new StringBuilder("{");
+        members.forEach((name, value) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(name).append("\":\"").append(value).append('"');
+        });
+        json.append('}');
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json.toString().getBytes(StandardCharsets.UTF_8));
+            return BASE64URL.encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
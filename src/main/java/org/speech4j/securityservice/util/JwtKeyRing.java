@@ -0,0 +1,70 @@
+package org.speech4j.securityservice.util;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Current set of JWT keys: one key that signs new tokens and every key whose
+ * tokens may still be alive. Each update swaps in a new immutable snapshot,
+ * so readers never lock and look a key up by kid with a single map access.
+ */
+@Component
+public class JwtKeyRing {
+
+    private volatile Snapshot snapshot = new Snapshot(null, Collections.emptyList());
+
+    public void install(JwtKey signingKey, Collection<JwtKey> keys) {
+        this.snapshot = new Snapshot(signingKey, keys);
+    }
+
+    public JwtKey getSigningKey() {
+        JwtKey signingKey = snapshot.signingKey;
+        if (signingKey == null) {
+            throw new IllegalStateException("No JWT signing key is active");
+        }
+        return signingKey;
+    }
+
+    public JwtKey find(String kid) {
+        return kid == null ? null : snapshot.byKid.get(kid);
+    }
+
+    public Collection<JwtKey> getKeys() {
+        return snapshot.byKid.values();
+    }
+
+    /**
+     * All keys as a JWK Set, including keys that do not sign yet. A new
+     * instance is returned after every update, so callers can cache by identity.
+     */
+    public Map<String, Object> getJwks() {
+        return snapshot.jwks;
+    }
+
+    private static final class Snapshot {
+        private final JwtKey signingKey;
+        private final Map<String, JwtKey> byKid;
+        private final Map<String, Object> jwks;
+
+        private Snapshot(JwtKey signingKey, Collection<JwtKey> keys) {
+            Map<String, JwtKey> byKid = new HashMap<>();
+            List<Map<String, Object>> jwks = new ArrayList<>(keys.size());
+            for (JwtKey key : keys) {
+                byKid.put(key.getKid(), key);
+                jwks.add(key.toJwk());
+            }
+            if (signingKey != null && byKid.putIfAbsent(signingKey.getKid(), signingKey) == null) {
+                jwks.add(signingKey.toJwk());
+            }
+            this.signingKey = signingKey;
+            this.byKid = Collections.unmodifiableMap(byKid);
+            this.jwks = Collections.singletonMap("keys", Collections.unmodifiableList(jwks));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.speech4j.securityservice.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes a {@link Flux} as newline delimited JSON, one element per line.
+ * Elements are encoded as they arrive, so memory use doesn't depend on
+ * the number of elements.
+ */
+@Component
+public class NdjsonUtil {
+
+    public static final MediaType APPLICATION_NDJSON = new MediaType("application", "x-ndjson");
+
+    private static final byte NEW_LINE = '\n';
+
+    private ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    public <T> Mono<ServerResponse> ok(Flux<T> values) {
+        return ServerResponse.ok()
+                .contentType(APPLICATION_NDJSON)
+                .body((message, context) ->
+                        message.writeWith(values.map(value -> encode(message.bufferFactory(), value)))
+                );
+    }
+
+    private DataBuffer encode(DataBufferFactory bufferFactory, Object value) {
+        try {
+            byte[] json = mapper.writeValueAsBytes(value);
+            return bufferFactory.allocateBuffer(json.length + 1)
+                    .write(json)
+                    .write(NEW_LINE);
+        } catch (JsonProcessingException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.speech4j.securityservice.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination cursor. Clients get it from the
+ * {@value #NEXT_CURSOR_HEADER} response header and send it back unchanged
+ * in the {@code cursor} query parameter.
+ */
+public final class PageCursor {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // Sorts before every non-empty key, so it marks the first page
+    public static final String FIRST = "";
+
+    private PageCursor() {
+    }
+
+    public static String encode(String lastKey) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor wasn't produced by {@link #encode(String)}
+     */
+    public static String decode(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+}
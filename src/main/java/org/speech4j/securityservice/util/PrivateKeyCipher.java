@@ -0,0 +1,106 @@
+package org.speech4j.securityservice.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Encrypts signing private keys before they are stored, with AES-GCM under
+ * {@code jwt.keys.encryption-key}. The kid is bound as associated data, so an
+ * encrypted key can't be moved to another row. Without a configured key,
+ * private keys are stored as plain PKCS#8, which is logged at startup. Plain
+ * keys are still read after a key has been configured.
+ */
+@Slf4j
+@Component
+public class PrivateKeyCipher {
+
+    // PKCS#8 DER starts with a SEQUENCE tag (0x30), so this version byte can't be mistaken for a plain key
+    private static final byte VERSION = 1;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKey key;
+
+    @Autowired
+    public PrivateKeyCipher(@Value("${jwt.keys.encryption-key:}") String encryptionKey) {
+        if (encryptionKey == null || encryptionKey.isEmpty()) {
+            this.key = null;
+            LOGGER.warn("jwt.keys.encryption-key is not set, signing private keys are stored unencrypted");
+            return;
+        }
+        byte[] raw = Base64.getDecoder().decode(encryptionKey);
+        if (raw.length != 16 && raw.length != 24 && raw.length != 32) {
+            throw new IllegalStateException("jwt.keys.encryption-key must be a base64 AES key of 16, 24 or 32 bytes");
+        }
+        this.key = new SecretKeySpec(raw, "AES");
+    }
+
+    public boolean isEnabled() {
+        return key != null;
+    }
+
+    public boolean isEncrypted(byte[] stored) {
+        return stored.length > 0 && stored[0] == VERSION;
+    }
+
+    /**
+     * Returns the value to store, the key unchanged if encryption is off.
+     */
+    public byte[] seal(String kid, byte[] privateKey) {
+        if (key == null) {
+            return privateKey;
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            byte[] sealed = cipher(Cipher.ENCRYPT_MODE, kid, iv).doFinal(privateKey);
+            return ByteBuffer.allocate(1 + IV_LENGTH + sealed.length)
+                    .put(VERSION)
+                    .put(iv)
+                    .put(sealed)
+                    .array();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot encrypt signing key " + kid, e);
+        }
+    }
+
+    /**
+     * Returns the PKCS#8 private key of a stored value, plain or encrypted.
+     */
+    public byte[] open(String kid, byte[] stored) {
+        if (!isEncrypted(stored)) {
+            return stored;
+        }
+        if (key == null) {
+            throw new IllegalStateException("Signing key " + kid + " is encrypted but jwt.keys.encryption-key is not set");
+        }
+        byte[] iv = Arrays.copyOfRange(stored, 1, 1 + IV_LENGTH);
+        try {
+            return cipher(Cipher.DECRYPT_MODE, kid, iv).doFinal(stored, 1 + IV_LENGTH, stored.length - 1 - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot decrypt signing key " + kid, e);
+        }
+    }
+
+    private Cipher cipher(int mode, String kid, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(mode, key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+        return cipher;
+    }
+}
@@ -0,0 +1,57 @@
+package org.speech4j.securityservice.util;
+
+import io.jsonwebtoken.Claims;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a single parse and signature check of a JWT. Claims and
+ * authorities are only present for {@link Status#VALID} tokens.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class TokenValidationResult {
+
+    public enum Status {
+        VALID,
+        EXPIRED,
+        BAD_SIGNATURE,
+        MALFORMED
+    }
+
+    private static final TokenValidationResult EXPIRED =
+            new TokenValidationResult(Status.EXPIRED, null, Collections.emptyList());
+    private static final TokenValidationResult BAD_SIGNATURE =
+            new TokenValidationResult(Status.BAD_SIGNATURE, null, Collections.emptyList());
+    private static final TokenValidationResult MALFORMED =
+            new TokenValidationResult(Status.MALFORMED, null, Collections.emptyList());
+
+    private final Status status;
+    private final Claims claims;
+    private final List<GrantedAuthority> authorities;
+
+    public static TokenValidationResult valid(Claims claims, List<GrantedAuthority> authorities) {
+        return new TokenValidationResult(Status.VALID, claims, authorities);
+    }
+
+    public static TokenValidationResult expired() {
+        return EXPIRED;
+    }
+
+    public static TokenValidationResult badSignature() {
+        return BAD_SIGNATURE;
+    }
+
+    public static TokenValidationResult malformed() {
+        return MALFORMED;
+    }
+
+    public boolean isValid() {
+        return status == Status.VALID;
+    }
+}
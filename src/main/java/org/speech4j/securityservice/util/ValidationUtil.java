@@ -32,4 +32,19 @@ public class ValidationUtil {
                 .body(fromValue(responseBody));
     }
 
+    // Names the field instead of echoing the value, rows of an import may carry passwords
+
+    public <T> String describe(Set<ConstraintViolation<T>> errors) {
+        StringBuilder errorsMsgs = new StringBuilder();
+        for (ConstraintViolation<T> error:errors) {
+            if (errorsMsgs.length() > 0) {
+                errorsMsgs.append("; ");
+            }
+            errorsMsgs.append(error.getPropertyPath())
+                    .append(": ")
+                    .append(error.getMessage());
+        }
+        return errorsMsgs.toString();
+    }
+
 }
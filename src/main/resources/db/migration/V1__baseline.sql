@@ -0,0 +1,54 @@
+-- Schema as db/init.sql created it before the role batch endpoints. Every
+-- statement is guarded with "if not exists", so databases set up by that
+-- script adopt this baseline. V2 onwards bring it to the current layout.
+
+create table if not exists users (
+    id varchar(64) not null primary key unique,
+    email varchar(64) not null unique,
+    password varchar(255) not null,
+    username varchar(64) unique
+);
+
+create table if not exists roles (
+    id varchar(64) not null primary key unique,
+    name varchar(64) not null unique
+);
+
+create table if not exists users_roles (
+    roles_id varchar(64) not null unique,
+    users_id varchar(64) not null unique,
+    foreign key (roles_id)
+          references roles (id),
+    foreign key (users_id)
+          references users (id)
+);
+
+create table if not exists signing_keys (
+    kid varchar(64) not null primary key,
+    algorithm varchar(16) not null,
+    private_key bytea not null,
+    public_key bytea not null,
+    created_at timestamptz not null default now(),
+    activates_at timestamptz not null
+);
+
+create table if not exists refresh_tokens (
+    token_hash varchar(64) not null primary key,
+    username varchar(64) not null,
+    roles text[],
+    created_at timestamptz not null default now(),
+    expires_at timestamptz not null,
+    foreign key (username)
+          references users (username) on delete cascade on update cascade
+);
+
+create index if not exists refresh_tokens_username_idx on refresh_tokens (username);
+
+create table if not exists revoked_tokens (
+    jti varchar(64) not null primary key,
+    expires_at timestamptz not null,
+    revoked_at timestamptz not null default now()
+);
+
+create index if not exists revoked_tokens_revoked_at_idx on revoked_tokens (revoked_at);
+create index if not exists revoked_tokens_expires_at_idx on revoked_tokens (expires_at);
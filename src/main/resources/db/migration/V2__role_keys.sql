@@ -0,0 +1,25 @@
+-- The baseline, like databases created by db/init.sql before the role batch
+-- endpoints, has varchar role keys and unique users_roles columns, which
+-- allowed one row per user and one per role. This moves to integer role ids,
+-- a composite primary key and a reverse index for role -> users lookups. A
+-- database created by the later db/init.sql already has that layout and ends
+-- up unchanged.
+
+alter table users_roles drop constraint if exists users_roles_roles_id_fkey;
+alter table users_roles drop constraint if exists users_roles_users_id_fkey;
+alter table users_roles drop constraint if exists users_roles_roles_id_key;
+alter table users_roles drop constraint if exists users_roles_users_id_key;
+alter table users_roles drop constraint if exists users_roles_pkey;
+
+alter table roles alter column id type integer using id::integer;
+create sequence if not exists roles_id_seq owned by roles.id;
+select setval('roles_id_seq', coalesce((select max(id) from roles), 0) + 1, false);
+alter table roles alter column id set default nextval('roles_id_seq');
+
+alter table users_roles alter column roles_id type integer using roles_id::integer;
+alter table users_roles
+    add primary key (users_id, roles_id),
+    add foreign key (users_id) references users (id) on delete cascade on update cascade,
+    add foreign key (roles_id) references roles (id) on delete cascade;
+
+create index if not exists users_roles_roles_id_users_id_idx on users_roles (roles_id, users_id);
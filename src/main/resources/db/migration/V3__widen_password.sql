@@ -0,0 +1,5 @@
+-- Databases created by the first db/init.sql have password varchar(64), which
+-- is too narrow for the encoded hashes of the pluggable password encoders.
+-- The column is widened to the size V1 creates; on a database that already
+-- has it this changes nothing.
+alter table users alter column password type varchar(255);
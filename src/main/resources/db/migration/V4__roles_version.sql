@@ -0,0 +1,6 @@
+-- Every change to a user's roles bumps users.roles_version. A refresh token
+-- keeps the version its roles snapshot was read at, and a refresh reloads the
+-- roles when the two differ. Existing snapshots start out current, as the
+-- role changes before this were applied by clearing them.
+alter table users add column if not exists roles_version bigint not null default 0;
+alter table refresh_tokens add column if not exists roles_version bigint not null default 0;
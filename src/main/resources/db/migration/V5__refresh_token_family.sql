@@ -0,0 +1,9 @@
+-- A refresh token now belongs to a family that is started at login. The row
+-- of the family keeps the digest of its newest token, and a refresh replaces
+-- it. Presenting any other token of the family means an old one was reused,
+-- and the whole family is revoked. Tokens issued before this form a family of
+-- their own, keyed by their digest.
+alter table refresh_tokens add column if not exists family_id varchar(64);
+update refresh_tokens set family_id = token_hash where family_id is null;
+alter table refresh_tokens alter column family_id set not null;
+create unique index if not exists refresh_tokens_family_id_idx on refresh_tokens (family_id);
@@ -0,0 +1,77 @@
+package org.speech4j.securityservice.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClientAddressResolverTest {
+
+    @Test
+    void headerIsIgnoredWithoutTrustedProxies() {
+        ClientAddressResolver resolver = new ClientAddressResolver(new String[0]);
+
+        assertThat(resolver.resolve("10.0.0.1", Collections.singletonList("1.2.3.4"))).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void headerIsIgnoredFromUntrustedPeer() {
+        ClientAddressResolver resolver = new ClientAddressResolver(new String[]{"10.0.0.0/8"});
+
+        assertThat(resolver.resolve("192.168.1.1", Collections.singletonList("1.2.3.4"))).isEqualTo("192.168.1.1");
+    }
+
+    @Test
+    void clientIsFirstUntrustedHopFromTheRight() {
+        ClientAddressResolver resolver = new ClientAddressResolver(new String[]{"10.0.0.0/8"});
+
+        assertThat(resolver.resolve("10.0.0.1", Collections.singletonList("6.6.6.6, 1.2.3.4, 10.1.2.3")))
+                .isEqualTo("1.2.3.4");
+    }
+
+    @Test
+    void headerLinesAreReadAsOneList() {
+        ClientAddressResolver resolver = new ClientAddressResolver(new String[]{"10.0.0.0/8"});
+
+        assertThat(resolver.resolve("10.0.0.1", Arrays.asList("6.6.6.6", "1.2.3.4", "10.1.2.3")))
+                .isEqualTo("1.2.3.4");
+    }
+
+    @Test
+    void leftmostHopWhenAllAreTrusted() {
+        ClientAddressResolver resolver = new ClientAddressResolver(new String[]{"10.0.0.0/8"});
+
+        assertThat(resolver.resolve("10.0.0.1", Collections.singletonList("10.0.0.3, 10.0.0.2")))
+                .isEqualTo("10.0.0.3");
+        assertThat(resolver.resolve("10.0.0.1", Collections.emptyList())).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void hostNamesAreNeverTrusted() {
+        ClientAddressResolver resolver = new ClientAddressResolver(new String[]{"127.0.0.1"});
+
+        assertThat(resolver.resolve("127.0.0.1", Collections.singletonList("1.2.3.4, localhost")))
+                .isEqualTo("localhost");
+    }
+
+    @Test
+    void prefixLengthsAreMatchedBitwise() {
+        ClientAddressResolver resolver = new ClientAddressResolver(new String[]{"192.168.0.128/25", "fd00::/8"});
+
+        assertThat(resolver.resolve("192.168.0.200", Collections.singletonList("1.2.3.4"))).isEqualTo("1.2.3.4");
+        assertThat(resolver.resolve("192.168.0.100", Collections.singletonList("1.2.3.4"))).isEqualTo("192.168.0.100");
+        assertThat(resolver.resolve("fd12::1", Collections.singletonList("1.2.3.4"))).isEqualTo("1.2.3.4");
+        assertThat(resolver.resolve("fe80::1", Collections.singletonList("1.2.3.4"))).isEqualTo("fe80::1");
+    }
+
+    @Test
+    void invalidProxyFailsStartup() {
+        assertThatThrownBy(() -> new ClientAddressResolver(new String[]{"ingress.local"}))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new ClientAddressResolver(new String[]{"10.0.0.0/33"}))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
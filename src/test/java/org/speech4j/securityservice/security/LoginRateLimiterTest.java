@@ -0,0 +1,83 @@
+package org.speech4j.securityservice.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoginRateLimiterTest {
+
+    private static final Duration NO_REFILL = Duration.ofHours(1);
+    // Slack for the time that passes between a failure and the check of its lock
+    private static final long SLACK_MILLIS = 500;
+
+    @Test
+    void burstIsAllowedThenThrottled() {
+        LoginRateLimiter limiter = limiter(3, NO_REFILL, 100, Duration.ofSeconds(1), Duration.ofMinutes(15));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.acquireUsername("alice")).isZero();
+        }
+        assertThat(limiter.acquireUsername("alice")).isPositive();
+        assertThat(limiter.acquireUsername("bob")).isZero();
+    }
+
+    @Test
+    void zeroRefillDisablesThrottling() {
+        LoginRateLimiter limiter = limiter(1, Duration.ZERO, 100, Duration.ofSeconds(1), Duration.ofMinutes(15));
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(limiter.acquireUsername("alice")).isZero();
+            assertThat(limiter.acquireAddress("10.0.0.1")).isZero();
+        }
+    }
+
+    @Test
+    void lockoutStartsAtThreshold() {
+        LoginRateLimiter limiter = limiter(100, Duration.ZERO, 3, Duration.ofSeconds(10), Duration.ofMinutes(15));
+
+        limiter.onFailure("alice", "10.0.0.1");
+        limiter.onFailure("alice", "10.0.0.1");
+        assertThat(limiter.acquireUsername("alice")).isZero();
+
+        limiter.onFailure("alice", "10.0.0.1");
+        assertLockedFor(limiter.acquireUsername("alice"), Duration.ofSeconds(10));
+        assertLockedFor(limiter.acquireAddress("10.0.0.1"), Duration.ofSeconds(10));
+    }
+
+    @Test
+    void lockoutDoublesUpToMax() {
+        LoginRateLimiter limiter = limiter(100, Duration.ZERO, 1, Duration.ofSeconds(10), Duration.ofSeconds(60));
+
+        long[] expectedSeconds = {10, 20, 40, 60, 60};
+        for (long seconds : expectedSeconds) {
+            limiter.onFailure("alice", "10.0.0.1");
+            assertLockedFor(limiter.acquireUsername("alice"), Duration.ofSeconds(seconds));
+        }
+    }
+
+    // An address that keeps guessing must stay locked even when one of its guesses succeeds
+
+    @Test
+    void successResetsUsernameButNotAddress() {
+        LoginRateLimiter limiter = limiter(100, Duration.ZERO, 1, Duration.ofSeconds(10), Duration.ofMinutes(15));
+
+        limiter.onFailure("alice", "10.0.0.1");
+        limiter.onSuccess("alice");
+
+        assertThat(limiter.acquireUsername("alice")).isZero();
+        assertLockedFor(limiter.acquireAddress("10.0.0.1"), Duration.ofSeconds(10));
+    }
+
+    private static void assertLockedFor(long waitMillis, Duration lock) {
+        assertThat(waitMillis).isBetween(lock.toMillis() - SLACK_MILLIS, lock.toMillis());
+    }
+
+    private static LoginRateLimiter limiter(int burst, Duration refill, int threshold,
+                                            Duration lockoutBase, Duration lockoutMax) {
+        return new LoginRateLimiter(65536, burst, refill, threshold, burst, refill, threshold,
+                lockoutBase, lockoutMax, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,90 @@
+package org.speech4j.securityservice.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RevocationListTest {
+
+    private static final long NOW = 1_000_000L;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void addedIdsAreRevoked() {
+        RevocationList list = new RevocationList(1000, 0.01, registry);
+        List<String> ids = ids(1000);
+        ids.forEach(id -> list.add(id, NOW + 1));
+
+        assertThat(ids).allMatch(list::isRevoked);
+    }
+
+    // Filling the filter far beyond its expected size only raises the false positive rate
+
+    @Test
+    void addedIdsAreRevokedWhenFilterIsOverfull() {
+        RevocationList list = new RevocationList(10, 0.01, registry);
+        List<String> ids = ids(5000);
+        ids.forEach(id -> list.add(id, NOW + 1));
+
+        assertThat(ids).allMatch(list::isRevoked);
+    }
+
+    @Test
+    void unknownIdsAreNotRevoked() {
+        RevocationList list = new RevocationList(10, 0.01, registry);
+        ids(5000).forEach(id -> list.add(id, NOW + 1));
+
+        assertThat(ids(5000)).noneMatch(list::isRevoked);
+        assertThat(list.isRevoked(null)).isFalse();
+    }
+
+    @Test
+    void purgeKeepsIdsThatHaveNotExpired() {
+        RevocationList list = new RevocationList(100, 0.01, registry);
+        List<String> expired = ids(500);
+        List<String> live = ids(500);
+        expired.forEach(id -> list.add(id, NOW));
+        live.forEach(id -> list.add(id, NOW + 1));
+
+        assertThat(list.purgeExpired(NOW)).isEqualTo(500);
+        assertThat(live).allMatch(list::isRevoked);
+        assertThat(expired).noneMatch(list::isRevoked);
+    }
+
+    @Test
+    void idsAddedAfterPurgeAreRevoked() {
+        RevocationList list = new RevocationList(100, 0.01, registry);
+        List<String> before = ids(300);
+        before.forEach(id -> list.add(id, NOW + 1));
+        list.purgeExpired(NOW);
+        List<String> after = ids(300);
+        after.forEach(id -> list.add(id, NOW + 1));
+
+        assertThat(before).allMatch(list::isRevoked);
+        assertThat(after).allMatch(list::isRevoked);
+    }
+
+    @Test
+    void addingAnIdTwiceKeepsTheFirstExpiry() {
+        RevocationList list = new RevocationList(100, 0.01, registry);
+        list.add("jti", NOW);
+        list.add("jti", NOW + 1);
+
+        assertThat(list.purgeExpired(NOW)).isEqualTo(1);
+        assertThat(list.isRevoked("jti")).isFalse();
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+}
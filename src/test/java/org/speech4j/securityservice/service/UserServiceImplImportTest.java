@@ -0,0 +1,91 @@
+package org.speech4j.securityservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.speech4j.securityservice.dto.UserDto;
+import org.speech4j.securityservice.dto.UserImportResult;
+import org.speech4j.securityservice.repository.UserRepository;
+import org.speech4j.securityservice.security.PasswordHasher;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UserServiceImplImportTest {
+
+    private static final int ROWS = 200;
+
+    private final AtomicInteger batches = new AtomicInteger();
+    private final PasswordHasher hasher = new PasswordHasher(NoOpPasswordEncoder.getInstance(), 1, 16, 1,
+            new SimpleMeterRegistry());
+
+    @AfterEach
+    void shutdown() {
+        hasher.shutdown();
+    }
+
+    // Rows are hashed far faster than batches are written, the import has to wait for the insert
+
+    @Test
+    void slowInsertDoesNotFailImport() {
+        UserServiceImpl service = service(slowRepository(Duration.ofMillis(50)), 5);
+
+        List<UserImportResult> results = service.importUsers(rows())
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertThat(results).hasSize(ROWS);
+        assertThat(results).allMatch(result -> result.getStatus() == UserImportResult.Status.CREATED);
+        assertThat(results).extracting(UserImportResult::getRow).doesNotHaveDuplicates();
+        assertThat(batches.get()).isEqualTo(ROWS / 5);
+    }
+
+    @Test
+    void lastPartialBatchIsWritten() {
+        UserServiceImpl service = service(slowRepository(Duration.ZERO), 30);
+
+        List<UserImportResult> results = service.importUsers(rows())
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertThat(results).hasSize(ROWS);
+        assertThat(batches.get()).isEqualTo((ROWS + 29) / 30);
+    }
+
+    private UserServiceImpl service(UserRepository repository, int batchSize) {
+        return new UserServiceImpl(repository, null, hasher, null, null, 500, batchSize, 4);
+    }
+
+    // Only createAll is called by the import, it echoes every id back as created
+
+    private UserRepository slowRepository(Duration insertTime) {
+        return (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("createAll")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    batches.incrementAndGet();
+                    return Flux.fromArray((String[]) args[0]).delaySubscription(insertTime);
+                });
+    }
+
+    private static Flux<Tuple2<Long, UserDto>> rows() {
+        return Flux.range(0, ROWS).map(row -> Tuples.of((long) row, user(row)));
+    }
+
+    private static UserDto user(int row) {
+        UserDto dto = new UserDto();
+        dto.setUsername("user" + row);
+        dto.setEmail("user" + row + "@speech4j.org");
+        dto.setPassword("password" + row);
+        return dto;
+    }
+}